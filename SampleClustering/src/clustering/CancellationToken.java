@@ -0,0 +1,102 @@
+package clustering;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A token shared between a long clustering run and the code controlling it. The run checks the token between two steps
+ * (e.g. two joins) and stops as soon as the token has been cancelled or its deadline has passed.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ *
+ */
+public class CancellationToken {
+	
+	private volatile boolean cancelled;
+	
+	//the deadline as given by System.nanoTime, or 0 when there is no deadline
+	private final long deadline;
+	
+	private final boolean hasDeadline;
+	
+	/**
+	 * Constructor. Creates a token without any deadline.
+	 */
+	public CancellationToken() {
+		this.deadline = 0;
+		this.hasDeadline = false;
+	}
+	
+	/**
+	 * Constructor. Creates a token that is automatically cancelled after a given time.
+	 * @param timeout the time budget
+	 * @param unit the unit of the time budget
+	 */
+	public CancellationToken(long timeout, TimeUnit unit) {
+		this.deadline = System.nanoTime()+unit.toNanos(timeout);
+		this.hasDeadline = true;
+	}
+	
+	/**
+	 * Requests the cancellation of the run.
+	 */
+	public void cancel() {
+		this.cancelled = true;
+	}
+	
+	/**
+	 * @return true if the run has been cancelled or its deadline has passed
+	 */
+	public boolean isCancelled() {
+		return cancelled || (hasDeadline && System.nanoTime()-deadline >= 0);
+	}
+	
+	/**
+	 * @throws CancellationException if the run has been cancelled or its deadline has passed
+	 */
+	public void throwIfCancelled() {
+		if (this.isCancelled()) {
+			throw new CancellationException(cancelled ? "The clustering has been cancelled." : "The clustering has exceeded its time budget.");
+		}
+	}
+	
+	/**
+	 * Runs a task checking this token on an executor. When the task stops because the token has been cancelled or
+	 * its deadline has passed, the returned future is cancelled (isCancelled returns true and get throws a
+	 * CancellationException), as if it had been cancelled directly. Conversely, cancelling the future cancels the token,
+	 * so that the task stops at its next check.
+	 * @param task the task, throwing a CancellationException when it stops on this token
+	 * @param executor the executor running the task
+	 * @return a future completed with the result of the task
+	 */
+	public <T> CompletableFuture<T> supplyAsync(final Supplier<T> task, Executor executor) {
+		
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		
+		executor.execute(() -> {
+			if (future.isDone()) {
+				//cancelled before it started
+				return;
+			}
+			try {
+				future.complete(task.get());
+			} catch (CancellationException e) {
+				future.cancel(false);
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		});
+		
+		//cancelling the future stops the task at the next check of the token
+		future.whenComplete((result, error) -> {
+			if (future.isCancelled()) {
+				this.cancel();
+			}
+		});
+		return future;
+	}
+}
@@ -0,0 +1,156 @@
+package clustering;
+
+import java.util.Arrays;
+
+import clustering.Tree.Node;
+
+/**
+ * This class implements an agglomerative clustering over a sparse k-nearest-neighbor graph, as an alternative to the
+ * Neighbor Joining when the number of samples rules out a full distance matrix.
+ * The edges of the graph are processed by increasing distance, as in Kruskal's minimum spanning tree algorithm, and each
+ * edge linking two different clusters merges them (single linkage). A merge happening at distance d places the new node
+ * at a height of d/2, so that the length of the path between two leaves in the tree is the distance at which they have
+ * been merged. The clusters that remain disconnected in the graph become the children of the root.
+ * Internal nodes are numbered rather than named after their leaves, to keep the labels small on large datasets.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ * @see KnnGraph
+ */
+public class GraphLinkage {
+	
+	private KnnGraph graph;
+	
+	//the tree representing the hierarchy of the nodes after clustering
+	private Tree tree;
+	
+	/**
+	 * Constructor.
+	 * @param graph the k-nearest-neighbor graph of the samples
+	 */
+	public GraphLinkage(KnnGraph graph) {
+		this.graph = graph;
+		this.tree = new Tree("root");
+	}
+	
+	/**
+	 * Clusters the nodes of the graph.
+	 * @return the tree of the nodes
+	 */
+	public Tree cluster() {
+		
+		int size = graph.size();
+		int k = graph.getK();
+		
+		int[] sortedEdges = this.sortEdges(size, k);
+		
+		//union-find over the nodes, each set being represented by the top node of its cluster
+		int[] parents = new int[size];
+		Node[] clusters = new Node[size];
+		double[] heights = new double[size];
+		for (int i=0;i<size;i++) {
+			parents[i] = i;
+			clusters[i] = new Node(graph.getLabel(i));
+		}
+		
+		int merged = 0;
+		for (int e:sortedEdges) {
+			int a = find(parents, e/k);
+			int b = find(parents, graph.getNeighbor(e/k, e%k));
+			if (a != b) {
+				double height = Math.max(graph.getDistance(e/k, e%k)/2, Math.max(heights[a], heights[b]));
+				
+				Node AB = new Node("node"+(merged++));
+				this.attach(AB, clusters[a], height-heights[a]);
+				this.attach(AB, clusters[b], height-heights[b]);
+				
+				parents[b] = a;
+				clusters[a] = AB;
+				heights[a] = height;
+				clusters[b] = null;
+			}
+		}
+		
+		for (int i=0;i<size;i++) {
+			if (parents[i] == i) {
+				tree.addChildToRoot(clusters[i]);
+			}
+		}
+		return tree;
+	}
+	
+	/**
+	 * Sorts the edges by increasing distance, ties being ordered by index. Each edge is sorted as a primitive key
+	 * holding the high bits of its distance, ordered as Double.compare, followed by its index in the neighbor arrays
+	 * of the graph. The edges whose distances only differ in the dropped low bits are then reordered exactly,
+	 * those runs being short.
+	 * @return the indexes of the edges in the neighbor arrays of the graph
+	 */
+	private int[] sortEdges(int size, int k) {
+		
+		int indexBits = 32-Integer.numberOfLeadingZeros(Math.max(1, size*k-1));
+		long indexMask = (1L << indexBits)-1;
+		
+		long[] keys = new long[size*k];
+		int count = 0;
+		for (int e=0;e<size*k;e++) {
+			if (graph.getNeighbor(e/k, e%k) >= 0) {
+				keys[count++] = (this.orderedBits(e, k) & ~indexMask) | e;
+			}
+		}
+		Arrays.sort(keys, 0, count);
+		
+		int[] edges = new int[count];
+		for (int n=0;n<count;n++) {
+			edges[n] = (int) (keys[n] & indexMask);
+		}
+		
+		//insertion sort of the runs sharing the same high bits
+		for (int n=1;n<count;n++) {
+			long high = keys[n] & ~indexMask;
+			int e = edges[n];
+			long bits = this.orderedBits(e, k);
+			int m = n;
+			while (m > 0 && (keys[m-1] & ~indexMask) == high && this.orderedBits(edges[m-1], k) > bits) {
+				edges[m] = edges[m-1];
+				m--;
+			}
+			edges[m] = e;
+		}
+		return edges;
+	}
+	
+	/**
+	 * @return the bits of the distance of an edge, as a long ordered as the distances are by Double.compare
+	 */
+	private long orderedBits(int e, int k) {
+		long bits = Double.doubleToLongBits(graph.getDistance(e/k, e%k));
+		return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+	}
+	
+	private void attach(Node parent, Node child, double branchLength) {
+		child.setParent(parent);
+		child.setBranchLength(branchLength);
+		parent.addChild(child);
+	}
+	
+	/**
+	 * @return the representative of the set of a node, compressing the path on the way
+	 */
+	private static int find(int[] parents, int node) {
+		int root = node;
+		while (parents[root] != root) {
+			root = parents[root];
+		}
+		while (parents[node] != root) {
+			int next = parents[node];
+			parents[node] = root;
+			node = next;
+		}
+		return root;
+	}
+	
+	public Tree getTree() {
+		return tree;
+	}
+}
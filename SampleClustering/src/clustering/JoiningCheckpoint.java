@@ -0,0 +1,426 @@
+package clustering;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+import clustering.Tree.Node;
+import util.SquareMatrix;
+
+/**
+ * A snapshot of a Neighbor Joining run between two joins, from which the run can be resumed in another process.
+ * The binary file holds the lower triangle of the active distance matrix with the sums of its rows, and the partial
+ * forest built so far: the subtree of each active node, in the order of the matrix. The labels of the internal nodes,
+ * being the labels of their children joined by "_", are not stored.
+ * A snapshot is either encoded in memory between two joins, then written by another thread while the joins go on, or
+ * written directly from the join thread through a small buffer. Encoding in memory holds a copy of the lower triangle,
+ * i.e. 4.N.N bytes for N active nodes, on top of the matrix itself until the copy has been written; writing directly
+ * needs no copy but stops the joins until the file is written.
+ * In both cases the snapshot is written into a temporary file which is renamed once complete, so that the previous
+ * checkpoint remains valid until the new one replaces it.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see NeighborJoining#resume(File)
+ */
+public class JoiningCheckpoint {
+
+	//a magic number written at the beginning of each checkpoint file
+	private static final int MAGIC = 0x4E4A4350;
+
+	//the size of the buffers holding an encoded snapshot
+	private static final int CHUNK_SIZE = 1 << 24;
+
+	//the size of the buffer used when writing a snapshot directly
+	private static final int DIRECT_BUFFER_SIZE = 1 << 20;
+
+	//the state of the run
+	private int totalNodes;
+	private boolean relaxed;
+	private SquareMatrix distanceMatrix;
+	private double[] rowSums;
+	private LinkedList<Node> nodes;
+
+	private JoiningCheckpoint() {
+
+	}
+
+	/**
+	 * Encodes the state of a run in memory. The content of the buffers does not depend on the run any more,
+	 * which can go on while they are written.
+	 * @param distanceMatrix the active distance matrix
+	 * @param rowSums the sums of the rows of the matrix
+	 * @param nodes the active nodes, in the order of the matrix
+	 * @param totalNodes the number of nodes to be clustered
+	 * @param relaxed whether the run uses the relaxed mode
+	 * @return the encoded snapshot, without its checksum
+	 */
+	static List<ByteBuffer> encode(SquareMatrix distanceMatrix, double[] rowSums, List<Node> nodes, int totalNodes, boolean relaxed) {
+
+		int size = distanceMatrix.size();
+		ChunkedBuffer out = new ChunkedBuffer(16+8L*size*(size+1)/2);
+		encode(out, distanceMatrix, rowSums, nodes, totalNodes, relaxed);
+		return out.finish();
+	}
+
+	/**
+	 * Writes the state of a run directly through a file channel, followed by its checksum, without any copy of the
+	 * matrix: the rows are encoded in a buffer which is written each time it is full. The content is first written
+	 * in a temporary file which then replaces the checkpoint file.
+	 * @param distanceMatrix the active distance matrix
+	 * @param rowSums the sums of the rows of the matrix
+	 * @param nodes the active nodes, in the order of the matrix
+	 * @param totalNodes the number of nodes to be clustered
+	 * @param relaxed whether the run uses the relaxed mode
+	 * @param file the checkpoint file
+	 * @throws IOException
+	 */
+	static void writeDirect(SquareMatrix distanceMatrix, double[] rowSums, List<Node> nodes, int totalNodes, boolean relaxed, File file) throws IOException {
+
+		File tmpFile = new File(file.getPath()+".tmp");
+		try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ChannelOutput out = new ChannelOutput(channel);
+			try {
+				encode(out, distanceMatrix, rowSums, nodes, totalNodes, relaxed);
+				out.finish();
+			} catch (UncheckedIOException e) {
+				throw e.getCause();
+			}
+			channel.force(true);
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Encodes the state of a run, without its checksum.
+	 */
+	private static void encode(Output out, SquareMatrix distanceMatrix, double[] rowSums, List<Node> nodes, int totalNodes, boolean relaxed) {
+
+		int size = distanceMatrix.size();
+		out.putInt(MAGIC);
+		out.putInt(totalNodes);
+		out.putInt(relaxed ? 1 : 0);
+		out.putInt(size);
+		for (int i=0;i<size;i++) {
+			out.putDouble(rowSums[i]);
+		}
+		//the matrix is symmetric
+		for (int i=1;i<size;i++) {
+			for (int j=0;j<i;j++) {
+				out.putDouble(distanceMatrix.get(i,j));
+			}
+		}
+
+		//the subtree of each active node, children first, without recursion to support deep trees
+		for (Node root:nodes) {
+			List<Node> stack = new ArrayList<Node>();
+			List<Node> postOrder = new ArrayList<Node>();
+			stack.add(root);
+			while (!stack.isEmpty()) {
+				Node n = stack.remove(stack.size()-1);
+				postOrder.add(n);
+				stack.addAll(n.getChildren());
+			}
+			out.putInt(postOrder.size());
+			for (int k=postOrder.size()-1;k>=0;k--) {
+				Node n = postOrder.get(k);
+				out.putInt(n.getChildren().size());
+				if (n.isLeaf()) {
+					out.putString(n.getLabel());
+				}
+				out.putDouble(n.getBranchLength());
+			}
+		}
+	}
+
+	/**
+	 * Writes an encoded snapshot through a file channel, followed by its checksum. The content is first written in
+	 * a temporary file which then replaces the checkpoint file.
+	 * @param buffers the encoded snapshot
+	 * @param file the checkpoint file
+	 * @throws IOException
+	 */
+	static void write(List<ByteBuffer> buffers, File file) throws IOException {
+
+		CRC32 crc = new CRC32();
+		for (ByteBuffer buffer:buffers) {
+			crc.update(buffer.duplicate());
+		}
+		ByteBuffer checksum = ByteBuffer.allocate(8);
+		checksum.putLong(0, crc.getValue());
+
+		ByteBuffer[] all = buffers.toArray(new ByteBuffer[buffers.size()+1]);
+		all[buffers.size()] = checksum;
+
+		File tmpFile = new File(file.getPath()+".tmp");
+		try (FileChannel channel = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long remaining = 0;
+			for (ByteBuffer buffer:all) {
+				remaining += buffer.remaining();
+			}
+			while (remaining > 0) {
+				remaining -= channel.write(all);
+			}
+			channel.force(true);
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Reads a checkpoint file, checking its integrity.
+	 * @param file the checkpoint file
+	 * @return the state of the run
+	 * @throws IOException if the file cannot be read, or is truncated or corrupted
+	 */
+	static JoiningCheckpoint read(File file) throws IOException {
+
+		CRC32 crc = new CRC32();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+				DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16), crc))) {
+
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Error: "+file+" is not a checkpoint file.");
+			}
+			JoiningCheckpoint checkpoint = new JoiningCheckpoint();
+			checkpoint.totalNodes = in.readInt();
+			checkpoint.relaxed = in.readInt() == 1;
+			int size = in.readInt();
+
+			checkpoint.rowSums = new double[size];
+			for (int i=0;i<size;i++) {
+				checkpoint.rowSums[i] = in.readDouble();
+			}
+			double[][] matrix = new double[size][size];
+			for (int i=1;i<size;i++) {
+				for (int j=0;j<i;j++) {
+					matrix[i][j] = in.readDouble();
+					matrix[j][i] = matrix[i][j];
+				}
+			}
+			checkpoint.distanceMatrix = new SquareMatrix(matrix);
+
+			checkpoint.nodes = new LinkedList<Node>();
+			for (int i=0;i<size;i++) {
+				Node root = readSubtree(in);
+				checkpoint.distanceMatrix.setLabel(root.getLabel(), i);
+				checkpoint.nodes.add(root);
+			}
+
+			long expected = crc.getValue();
+			if (in.readLong() != expected) {
+				throw new IOException("Error: the checkpoint file "+file+" is corrupted.");
+			}
+			return checkpoint;
+		} catch (EOFException e) {
+			throw new IOException("Error: the checkpoint file "+file+" is truncated.", e);
+		}
+	}
+
+	/**
+	 * Rebuilds a subtree from its nodes listed children first.
+	 */
+	private static Node readSubtree(DataInputStream in) throws IOException {
+
+		int count = in.readInt();
+		List<Node> stack = new ArrayList<Node>();
+		for (int k=0;k<count;k++) {
+			int children = in.readInt();
+			Node n;
+			if (children == 0) {
+				n = new Node();
+				n.setLabel(readString(in));
+			}else {
+				if (children > stack.size()) {
+					throw new IOException("Error: invalid tree in the checkpoint file.");
+				}
+				//the children are on top of the stack, in their order
+				List<Node> last = stack.subList(stack.size()-children, stack.size());
+				StringBuilder label = new StringBuilder();
+				n = new Node();
+				for (int c=0;c<children;c++) {
+					Node child = last.get(c);
+					label.append(c == 0 ? "" : "_").append(child.getLabel());
+					child.setParent(n);
+					n.addChild(child);
+				}
+				n.setLabel(label.toString());
+				last.clear();
+			}
+			n.setBranchLength(in.readDouble());
+			stack.add(n);
+		}
+		if (stack.size() != 1) {
+			throw new IOException("Error: invalid tree in the checkpoint file.");
+		}
+		return stack.get(0);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	public int getTotalNodes() {
+		return totalNodes;
+	}
+
+	public boolean isRelaxed() {
+		return relaxed;
+	}
+
+	public SquareMatrix getDistanceMatrix() {
+		return distanceMatrix;
+	}
+
+	public double[] getRowSums() {
+		return rowSums;
+	}
+
+	/**
+	 * @return the active nodes, in the order of the matrix, along with their subtrees
+	 */
+	public LinkedList<Node> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * The destination of an encoded snapshot, receiving the values through a heap buffer.
+	 */
+	private static abstract class Output {
+
+		protected ByteBuffer current;
+
+		/**
+		 * Makes room for a number of bytes in the current buffer.
+		 */
+		protected abstract void ensure(int bytes);
+
+		private void putInt(int value) {
+			this.ensure(4);
+			current.putInt(value);
+		}
+
+		private void putDouble(double value) {
+			this.ensure(8);
+			current.putDouble(value);
+		}
+
+		private void putString(String value) {
+			if (value == null) {
+				this.putInt(-1);
+				return;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			this.putInt(bytes.length);
+			this.ensure(bytes.length);
+			current.put(bytes);
+		}
+	}
+
+	/**
+	 * A sequence of heap buffers growing by chunks, since a matrix may exceed the capacity of a single buffer.
+	 */
+	private static class ChunkedBuffer extends Output {
+
+		private List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+
+		//the size of the next chunk
+		private int chunkSize;
+
+		/**
+		 * @param expectedBytes the expected size of the content, small contents fitting in a single chunk
+		 */
+		private ChunkedBuffer(long expectedBytes) {
+			this.chunkSize = (int) Math.min(CHUNK_SIZE, Math.max(1024, expectedBytes+1024));
+		}
+
+		@Override
+		protected void ensure(int bytes) {
+			if (current == null || current.remaining() < bytes) {
+				current = ByteBuffer.allocate(Math.max(chunkSize, bytes));
+				chunkSize = CHUNK_SIZE;
+				chunks.add(current);
+			}
+		}
+
+		/**
+		 * @return the buffers, ready to be read
+		 */
+		private List<ByteBuffer> finish() {
+			for (ByteBuffer chunk:chunks) {
+				chunk.flip();
+			}
+			return chunks;
+		}
+	}
+
+	/**
+	 * A single buffer written through a file channel each time it is full, the checksum being computed on the way.
+	 */
+	private static class ChannelOutput extends Output {
+
+		private FileChannel channel;
+		private CRC32 crc = new CRC32();
+
+		private ChannelOutput(FileChannel channel) {
+			this.channel = channel;
+			this.current = ByteBuffer.allocate(DIRECT_BUFFER_SIZE);
+		}
+
+		@Override
+		protected void ensure(int bytes) {
+			if (current.remaining() < bytes) {
+				this.flush();
+				if (current.capacity() < bytes) {
+					current = ByteBuffer.allocate(bytes);
+				}
+			}
+		}
+
+		private void flush() {
+			current.flip();
+			crc.update(current.duplicate());
+			try {
+				while (current.hasRemaining()) {
+					channel.write(current);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			current.clear();
+		}
+
+		/**
+		 * Writes the rest of the content, followed by its checksum.
+		 * @throws IOException
+		 */
+		private void finish() throws IOException {
+			this.flush();
+			ByteBuffer checksum = ByteBuffer.allocate(8);
+			checksum.putLong(0, crc.getValue());
+			while (checksum.hasRemaining()) {
+				channel.write(checksum);
+			}
+		}
+	}
+}
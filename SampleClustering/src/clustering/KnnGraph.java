@@ -0,0 +1,84 @@
+package clustering;
+
+import java.util.Arrays;
+
+/**
+ * A sparse graph where each node is linked to its k nearest neighbors. The neighbors of all the nodes are stored in
+ * flat primitive arrays, so that the graph takes O(N.k) memory instead of the O(N.N) of a distance matrix.
+ * A node may have fewer than k neighbors (e.g. when the neighbors come from a candidate index), the missing ones
+ * being marked with -1.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ * @see GraphLinkage
+ */
+public class KnnGraph {
+	
+	//the number of neighbors per node
+	private int k;
+	
+	//the labels of the nodes
+	private String[] labels;
+	
+	//the neighbors of node i, and their distances, are stored at the indexes i*k to i*k+k-1
+	private int[] neighbors;
+	private double[] distances;
+	
+	/**
+	 * Constructor. Creates a graph without any edge.
+	 * @param labels the labels of the nodes
+	 * @param k the maximal number of neighbors per node
+	 */
+	public KnnGraph(String[] labels, int k) {
+		if (k < 1) {
+			throw new IllegalArgumentException("The number of neighbors should be positive.");
+		}
+		this.k = k;
+		this.labels = labels;
+		this.neighbors = new int[labels.length*k];
+		this.distances = new double[labels.length*k];
+		Arrays.fill(neighbors, -1);
+	}
+	
+	/**
+	 * Defines the neighbors of a node.
+	 * @param node the index of the node
+	 * @param nodeNeighbors the indexes of its neighbors, at most k of them
+	 * @param nodeDistances the distances to its neighbors
+	 * @param count the number of neighbors
+	 */
+	public void setNeighbors(int node, int[] nodeNeighbors, double[] nodeDistances, int count) {
+		if (count > k) {
+			throw new IllegalArgumentException("A node cannot have more than "+k+" neighbors.");
+		}
+		System.arraycopy(nodeNeighbors, 0, neighbors, node*k, count);
+		System.arraycopy(nodeDistances, 0, distances, node*k, count);
+		Arrays.fill(neighbors, node*k+count, node*k+k, -1);
+	}
+	
+	/**
+	 * @return the index of the n-th neighbor of a node, or -1 if there is none
+	 */
+	public int getNeighbor(int node, int n) {
+		return neighbors[node*k+n];
+	}
+	
+	/**
+	 * @return the distance to the n-th neighbor of a node
+	 */
+	public double getDistance(int node, int n) {
+		return distances[node*k+n];
+	}
+	
+	public int size() {
+		return labels.length;
+	}
+	
+	public int getK() {
+		return k;
+	}
+	
+	public String getLabel(int node) {
+		return labels[node];
+	}
+}
@@ -1,6 +1,16 @@
 package clustering;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import clustering.Tree.Node;
 import util.SquareMatrix;
@@ -27,8 +37,40 @@ public class NeighborJoining {
 	//the tree representing the hierarchy of the nodes after clustering
 	private Tree NJTree;
 	
+	//the sum of each row of the distance matrix, kept up to date after each join
+	private double[] rowSums;
+	
+	//notified after each join, may be null
+	private ProgressListener progressListener;
+	
+	//checked before each join, may be null
+	private CancellationToken cancellationToken;
+	
+	//the number of nodes to be clustered
+	private int totalNodes;
+	
+	//the time at which the clustering started, and the work done since, in number of visited matrix cells
+	private long startTime;
+	private double workDone;
+	
+	//whether several pairs are joined on each pass over the matrix
+	private boolean relaxed;
+	
+	//the file receiving the checkpoints, null when disabled, and the minimal time between two checkpoints
+	private File checkpointFile;
+	private long checkpointInterval;
+	
+	//whether the checkpoints are copied in memory and written in the background, or written directly from the join thread
+	private boolean backgroundCheckpoints = true;
+	
+	//the time of the last checkpoint, and the checkpoint being written by the background thread
+	private long lastCheckpoint;
+	private ExecutorService checkpointWriter;
+	private Future<?> pendingCheckpoint;
+	
 	/**
 	 * Constructor. Takes a distance matrix and consider the labels of each entry in the matrix as a node to be clustered and reordered into a tree.
+	 * The matrix is compacted within its own array as the nodes are joined, so its content is lost once the clustering has run.
 	 * @param distMatrix the distance matrix
 	 */
 	public NeighborJoining(SquareMatrix distMatrix) {
@@ -41,26 +83,65 @@ public class NeighborJoining {
 			nodes.add(leaf);
 		}
 		this.distanceMatrix = distMatrix;
+		this.totalNodes = distMatrix.size();
 		
 		this.NJTree = new Tree("root");
 	}
 	
 	/**
-	 * A recursive method for joining a pair of closest nodes (neighbors) and assign them to a parent node. At each step the Q Matrix is calculated from the distance
+	 * Constructor. Takes a distance matrix along with the sums of its rows, typically accumulated while the matrix was being built,
+	 * which saves their computation at the beginning of the clustering.
+	 * @param distMatrix the distance matrix
+	 * @param rowSums the sum of each row of the matrix
+	 */
+	public NeighborJoining(SquareMatrix distMatrix, double[] rowSums) {
+		this(distMatrix);
+		if (rowSums.length != distMatrix.size()) {
+			throw new IllegalArgumentException("There should be one sum per row of the matrix.");
+		}
+		this.rowSums = rowSums;
+	}
+	
+	/**
+	 * The join loop: pairs of nodes are joined until two nodes remain, and a checkpoint is taken when it is due.
+	 * The loop runs at least once, so that a matrix of two nodes gives a single cluster.
+	 */
+	private void joinAll () {
+		
+		try {
+			do {
+				if (cancellationToken != null) {
+					cancellationToken.throwIfCancelled();
+				}
+				if (relaxed) {
+					this.relaxedJoining(distanceMatrix);
+				}else {
+					this.join(distanceMatrix);
+				}
+				this.checkpointIfDue();
+			} while (distanceMatrix.size()>2);
+		} finally {
+			if (checkpointWriter != null) {
+				//the checkpoint being written, if any, completes in the background
+				checkpointWriter.shutdown();
+				checkpointWriter = null;
+			}
+		}
+		this.buildTree();
+	}
+	
+	/**
+	 * A method for joining a pair of closest nodes (neighbors) and assign them to a parent node. At each step the Q Matrix is calculated from the distance
 	 * matrix to identify the closest pair. As a consequence, the new distance matrix integrates a new node encompassing the pair while its size is decremented
 	 * from N to N-1 entries. 
 	 * @param distMatrix 
 	 */
-	private void recursiveJoining (SquareMatrix distMatrix) {
-		
-		//Instantiate the matrix called Q-Matrix
-		SquareMatrix QMatrix = this.computeQMatrix(distMatrix);
-		
+	private void join (SquareMatrix distMatrix) {
 		
 		/* Get the pair of nodes with the minimal value in the Q Matrix;
 		 * it corresponds to the next pair of nodes to be collapsed into a cluster
 		 * */
-		int[] pair = QMatrix.getMinRowCol();
+		int[] pair = this.findMinQPair(distMatrix);
 		
 		int indexA = pair[0];
 		int indexB = pair[1];
@@ -74,6 +155,7 @@ public class NeighborJoining {
 		B.setParent(AB);
 		AB.addChild(A);
 		AB.addChild(B);
+		this.setBranchLengths(distMatrix, indexA, indexB);
 		
 		//save this new node
 		
@@ -90,37 +172,279 @@ public class NeighborJoining {
 			}
 		}
 		
-		//insert the new node
-		distMatrix.insertEntry(entry);
+		this.updateRowSums(distMatrix, indexA, indexB, entry);
+		
+		//remove the nodes A and B and insert the new node at the end, in the same array
+		this.compact(distMatrix, indexA, indexB, entry);
 		nodes.add(AB);
-		//remove the nodes A and B
 		if (indexA>indexB) {
-			distMatrix.removeEntry(indexA);
-			distMatrix.removeEntry(indexB);
 			nodes.remove(indexA);
 			nodes.remove(indexB);
 		}else {
-			distMatrix.removeEntry(indexB);
-			distMatrix.removeEntry(indexA);
 			nodes.remove(indexB);
 			nodes.remove(indexA);
 		}
 		
-		if (distMatrix.size()>2) {
-			//call recursively
-			this.recursiveJoining(distMatrix);
-		}else {
-			this.buildTree();
+		this.reportProgress(distMatrix.size()+1, distMatrix.size());
+	}
+	
+	/**
+	 * Removes the rows and the columns of the nodes A and B, and appends the distances to their new parent node as the
+	 * last row and column. The matrix is compacted within its own array: the remaining cells only move up and left,
+	 * each one being read before its destination is overwritten.
+	 * @param distMatrix the distance matrix before the join
+	 * @param indexA the index of the node A
+	 * @param indexB the index of the node B
+	 * @param entry the distances to the new node, indexed as the matrix before the join
+	 */
+	private void compact (SquareMatrix distMatrix, int indexA, int indexB, double[] entry) {
+		
+		int N = distMatrix.size();
+		int last = N-2;
+		
+		int r = 0;
+		for (int i=0;i<N;i++) {
+			if (i != indexA && i != indexB) {
+				int c = 0;
+				for (int j=0;j<N;j++) {
+					if (j != indexA && j != indexB) {
+						distMatrix.set(r, c++, distMatrix.get(i,j));
+					}
+				}
+				distMatrix.set(r, last, entry[i]);
+				r++;
+			}
+		}
+		//the last row is written once all the rows have been moved
+		for (int c=0;c<last;c++) {
+			distMatrix.set(last, c, distMatrix.get(c, last));
 		}
+		distMatrix.set(last, last, 0);
+		distMatrix.truncate(N-1);
+	}
+	
+	/**
+	 * A pass of the relaxed Neighbor Joining. Instead of the global minimum of the Q Matrix, each node looks for the
+	 * minimum of its own row, and every pair of nodes being the minimum of each other's row is joined in the same pass.
+	 * These pairs never share a node, and the global minimum is always one of them. The distances to the new nodes are
+	 * computed as if the pairs were joined one after the other, and the matrix is compacted once for all the joins.
+	 * @param distMatrix the distance matrix
+	 */
+	private void relaxedJoining (SquareMatrix distMatrix) {
+		
+		int N = distMatrix.size();
 		
+		//the column of the minimum of each row of the Q Matrix, which is not stored
+		int[] rowMin = new int[N];
+		for (int i=0;i<N;i++) {
+			double minValue = Double.POSITIVE_INFINITY;
+			for (int j=0;j<N;j++) {
+				if (i != j) {
+					double qValue = (N-2)*distMatrix.get(i,j)-rowSums[j]-rowSums[i];
+					if (qValue < minValue) {
+						minValue = qValue;
+						rowMin[i] = j;
+					}
+				}
+			}
+		}
+		
+		//the mutual minima, each node being joined at most once
+		int[] partner = new int[N];
+		int pairs = 0;
+		for (int i=0;i<N;i++) {
+			partner[i] = -1;
+			if (rowMin[i] < i && rowMin[rowMin[i]] == i) {
+				partner[i] = rowMin[i];
+				partner[rowMin[i]] = i;
+				pairs++;
+			}
+		}
+		if (pairs == 0) {
+			//ties may hide the global minimum: fall back to a single join
+			int[] pair = this.findMinQPair(distMatrix);
+			partner[pair[0]] = pair[1];
+			partner[pair[1]] = pair[0];
+			pairs = 1;
+		}
+		
+		//the rows of the new matrix: the remaining nodes, then the new nodes in the order of their pairs
+		int M = N-pairs;
+		int[] rows = new int[M];
+		double[][] newEntries = new double[pairs][];
+		LinkedList<Node> newNodes = new LinkedList<Node>();
+		int kept = 0;
+		for (int i=0;i<N;i++) {
+			if (partner[i] == -1) {
+				rows[kept++] = i;
+				newNodes.add(nodes.get(i));
+			}
+		}
+		
+		for (int i=0, p=0;i<N;i++) {
+			if (partner[i] > i) {
+				int indexA = i, indexB = partner[i];
+				Node A = nodes.get(indexA);
+				Node B = nodes.get(indexB);
+				
+				Node AB = new Node(A.getLabel()+"_"+B.getLabel());
+				A.setParent(AB);
+				B.setParent(AB);
+				AB.addChild(A);
+				AB.addChild(B);
+				this.setBranchLengths(distMatrix, indexA, indexB);
+				newNodes.add(AB);
+				
+				//the distances to the remaining nodes and to the new nodes of the previous pairs
+				double dAB = distMatrix.get(indexA, indexB);
+				double[] entry = new double[kept+p];
+				for (int k=0;k<kept;k++) {
+					entry[k] = (distMatrix.get(indexA, rows[k])+distMatrix.get(indexB, rows[k])-dAB)/2;
+				}
+				for (int q=0;q<p;q++) {
+					int indexC = rows[kept+q], indexD = partner[indexC];
+					double dCD = distMatrix.get(indexC, indexD);
+					double dACD = (distMatrix.get(indexA, indexC)+distMatrix.get(indexA, indexD)-dCD)/2;
+					double dBCD = (distMatrix.get(indexB, indexC)+distMatrix.get(indexB, indexD)-dCD)/2;
+					entry[kept+q] = (dACD+dBCD-dAB)/2;
+				}
+				newEntries[p] = entry;
+				rows[kept+p] = indexA;
+				p++;
+			}
+		}
+		
+		/* a single compaction of the matrix in its own array, along with the sums of its rows: rows[r] >= r for the
+		 * remaining nodes, so each cell is read before being overwritten
+		 */
+		double[] newSums = new double[M];
+		for (int r=0;r<M;r++) {
+			for (int c=0;c<r;c++) {
+				double d = r < kept ? distMatrix.get(rows[r], rows[c]) : newEntries[r-kept][c];
+				distMatrix.set(r, c, d);
+				distMatrix.set(c, r, d);
+				newSums[r] += d;
+				newSums[c] += d;
+			}
+			distMatrix.set(r, r, 0);
+		}
+		distMatrix.truncate(M);
+		rowSums = newSums;
+		nodes = newNodes;
+		
+		this.reportProgress(N, M);
+	}
+	
+	/**
+	 * Takes a checkpoint when they are enabled, the interval since the last one has elapsed, and the previous one has
+	 * been written. In the background mode, the state is encoded in memory between two joins, and written by a background
+	 * thread while the joins go on. Otherwise it is written directly, the joins waiting for the file to be written.
+	 */
+	private void checkpointIfDue () {
+		
+		if (checkpointFile == null || distanceMatrix.size() <= 2) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if (now-lastCheckpoint < checkpointInterval || (pendingCheckpoint != null && !pendingCheckpoint.isDone())) {
+			return;
+		}
+		lastCheckpoint = now;
+		
+		if (!backgroundCheckpoints) {
+			try {
+				JoiningCheckpoint.writeDirect(distanceMatrix, rowSums, nodes, totalNodes, relaxed, checkpointFile);
+			} catch (IOException e) {
+				//the run goes on, the previous checkpoint remaining valid
+				e.printStackTrace();
+			}
+			return;
+		}
+		
+		final List<ByteBuffer> snapshot = JoiningCheckpoint.encode(distanceMatrix, rowSums, nodes, totalNodes, relaxed);
+		final File file = checkpointFile;
+		
+		if (checkpointWriter == null) {
+			checkpointWriter = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "nj-checkpoint");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		pendingCheckpoint = checkpointWriter.submit(() -> {
+			try {
+				JoiningCheckpoint.write(snapshot, file);
+			} catch (IOException e) {
+				//the run goes on, the previous checkpoint remaining valid
+				e.printStackTrace();
+			}
+		});
+	}
+	
+	/**
+	 * Resumes a run from its last checkpoint, typically in a new process after the previous one has stopped.
+	 * The returned instance goes on with the same mode when cluster is called; the progress listener, the cancellation
+	 * token and the checkpoints have to be set again.
+	 * @param checkpoint the checkpoint file
+	 * @return the Neighbor Joining, ready to go on with the clustering
+	 * @throws IOException if the checkpoint cannot be read, or is truncated or corrupted
+	 */
+	public static NeighborJoining resume (File checkpoint) throws IOException {
+		
+		JoiningCheckpoint state = JoiningCheckpoint.read(checkpoint);
+		
+		NeighborJoining NJcluster = new NeighborJoining(state.getDistanceMatrix(), state.getRowSums());
+		NJcluster.nodes = state.getNodes();
+		NJcluster.totalNodes = state.getTotalNodes();
+		NJcluster.relaxed = state.isRelaxed();
+		return NJcluster;
 	}
 	
 	
 	/**
-	 * This method initiates the clustering calling the first iteration of the recursive joining.
+	 * Updates the sums of the rows after a join, in the same order as the matrix once the new node is inserted at the end
+	 * and the nodes A and B are removed. The distances to A and B are replaced by the distance to the new node.
+	 * @param distMatrix the distance matrix before the join
+	 * @param indexA the index of the node A
+	 * @param indexB the index of the node B
+	 * @param entry the distances to the new node
+	 */
+	private void updateRowSums (SquareMatrix distMatrix, int indexA, int indexB, double[] entry) {
+		
+		int N = distMatrix.size();
+		double[] newSums = new double[N-1];
+		double newNodeSum = 0;
+		
+		int k = 0;
+		for (int i=0;i<N;i++) {
+			if (i != indexA && i != indexB) {
+				newSums[k++] = rowSums[i]-distMatrix.get(i,indexA)-distMatrix.get(i,indexB)+entry[i];
+				newNodeSum += entry[i];
+			}
+		}
+		newSums[k] = newNodeSum;
+		rowSums = newSums;
+	}
+	
+	/**
+	 * This method runs the clustering, joining the nodes until two of them remain.
 	 */
 	public void cluster () {
-		this.recursiveJoining(distanceMatrix);
+		startTime = System.currentTimeMillis();
+		lastCheckpoint = startTime;
+		workDone = 0;
+		if (rowSums == null) {
+			rowSums = new double[distanceMatrix.size()];
+			for (int i=0;i<rowSums.length;i++) {
+				rowSums[i] = distanceMatrix.getSumRow(i);
+			}
+		}
+		if (distanceMatrix.size()>1) {
+			this.joinAll();
+		}else {
+			//nothing to join
+			this.buildTree();
+		}
 	}
 	
 	
@@ -129,12 +453,155 @@ public class NeighborJoining {
 	 * If the clustering has been done 
 	 */
 	private void buildTree() {
+		//the two last nodes share the distance between them
+		if (nodes.size() == 2) {
+			nodes.get(0).setBranchLength(distanceMatrix.get(0,1)/2);
+			nodes.get(1).setBranchLength(distanceMatrix.get(0,1)/2);
+		}
 		//Assign the nodes the root node. 
 		for(Node child:nodes) {
 			NJTree.addChildToRoot(child);
 		}
 	}
 	
+	/**
+	 * Computes the lengths of the branches linking the nodes A and B to their new parent node, as defined by Saitou & Nei.
+	 * Negative lengths, which the method may produce, are set to zero and the difference is given to the other branch.
+	 * @param distMatrix the distance matrix before the join
+	 * @param indexA the index of the node A
+	 * @param indexB the index of the node B
+	 */
+	private void setBranchLengths (SquareMatrix distMatrix, int indexA, int indexB) {
+		
+		int N = distMatrix.size();
+		double dAB = distMatrix.get(indexA, indexB);
+		double lengthA = dAB/2;
+		if (N > 2) {
+			lengthA += (rowSums[indexA]-rowSums[indexB])/(2*(N-2));
+		}
+		lengthA = Math.max(0, Math.min(dAB, lengthA));
+		
+		nodes.get(indexA).setBranchLength(lengthA);
+		nodes.get(indexB).setBranchLength(dAB-lengthA);
+	}
+	
+	/**
+	 * Runs the clustering asynchronously.
+	 * The clustering stops between two joins if the cancellation token is cancelled or its deadline passes, as well as when the
+	 * returned future is cancelled. In both cases, the future ends up cancelled: isCancelled returns true and get throws
+	 * a CancellationException.
+	 * @param executor the executor running the clustering
+	 * @return a future completed with the tree once the clustering is done
+	 * @see CancellationToken#supplyAsync(java.util.function.Supplier, Executor)
+	 */
+	public CompletableFuture<Tree> clusterAsync (Executor executor) {
+		
+		if (cancellationToken == null) {
+			cancellationToken = new CancellationToken();
+		}
+		
+		return cancellationToken.supplyAsync(() -> {
+			this.cluster();
+			return NJTree;
+		}, executor);
+	}
+	
+	/**
+	 * Notifies the progress listener after a join. Since a join on N nodes costs N*N operations,
+	 * the remaining time is estimated from the average time per operation so far. In relaxed mode, a pass
+	 * usually joins several pairs and the estimate is an upper bound.
+	 * @param joinedSize the number of nodes before the join
+	 * @param remaining the number of nodes after the join
+	 */
+	private void reportProgress (int joinedSize, int remaining) {
+		
+		workDone += (double) joinedSize*joinedSize;
+		
+		if (progressListener != null) {
+			//the remaining nodes are joined until 2 of them remain
+			double remainingWork = sumOfSquares(remaining)-sumOfSquares(2);
+			long elapsed = System.currentTimeMillis()-startTime;
+			long estimate = elapsed > 0 ? (long) (elapsed/workDone*remainingWork) : -1;
+			
+			progressListener.onProgress(remaining, totalNodes, estimate);
+		}
+	}
+	
+	/**
+	 * @return 1+4+...+n*n
+	 */
+	private static double sumOfSquares (int n) {
+		return (double) n*(n+1)*(2*n+1)/6;
+	}
+	
+	public ProgressListener getProgressListener() {
+		return progressListener;
+	}
+
+	public void setProgressListener(ProgressListener progressListener) {
+		this.progressListener = progressListener;
+	}
+
+	public boolean isRelaxed() {
+		return relaxed;
+	}
+
+	/**
+	 * Enables the relaxed mode, where every pair of nodes being the minimum of each other's row in the Q Matrix is joined
+	 * on the same pass. The trees are close to the exact Neighbor Joining ones, but not always identical, while the number
+	 * of passes over the matrix is much smaller.
+	 * @param relaxed
+	 */
+	public void setRelaxed(boolean relaxed) {
+		this.relaxed = relaxed;
+	}
+
+	/**
+	 * Enables the checkpoints: the state of the run is written in a file, at most once per interval, so that the run
+	 * can be resumed if the process stops. The checkpoints are written in the background.
+	 * @param checkpointFile the checkpoint file, replaced by each new checkpoint, or null to disable the checkpoints
+	 * @param intervalMillis the minimal time between two checkpoints
+	 * @see #resume(File)
+	 * @see #setCheckpoint(File, long, boolean)
+	 */
+	public void setCheckpoint(File checkpointFile, long intervalMillis) {
+		this.setCheckpoint(checkpointFile, intervalMillis, true);
+	}
+
+	/**
+	 * Enables the checkpoints, choosing how they are written. In the background, the joins go on while a checkpoint is
+	 * written, but the lower triangle of the matrix is copied in memory first, i.e. about 4.N.N bytes for N active nodes
+	 * on top of the 8.N.N bytes of the matrix. Written directly, no copy is made but the joins wait for the file.
+	 * @param checkpointFile the checkpoint file, replaced by each new checkpoint, or null to disable the checkpoints
+	 * @param intervalMillis the minimal time between two checkpoints
+	 * @param inBackground true to write the checkpoints in the background, false to write them from the join thread
+	 * @see #resume(File)
+	 */
+	public void setCheckpoint(File checkpointFile, long intervalMillis, boolean inBackground) {
+		this.checkpointFile = checkpointFile;
+		this.checkpointInterval = intervalMillis;
+		this.backgroundCheckpoints = inBackground;
+	}
+
+	public CancellationToken getCancellationToken() {
+		return cancellationToken;
+	}
+
+	/**
+	 * Defines the token checked before each join.
+	 * @param cancellationToken
+	 */
+	public void setCancellationToken(CancellationToken cancellationToken) {
+		this.cancellationToken = cancellationToken;
+	}
+
+	/**
+	 * @return the tree built by the clustering
+	 */
+	public Tree getTree() {
+		return NJTree;
+	}
+	
 	/**
 	 * 
 	 */
@@ -145,41 +612,33 @@ public class NeighborJoining {
 	
 	
 	/**
-	 * A method for calculating the QMatrix, as found in this link:
-	 * <a href="https://en.wikipedia.org/wiki/Neighbor_joining">https://en.wikipedia.org/wiki/Neighbor_joining</a>  
-	 * @param distMatrix a distance Matrix
-	 * @return the corresponding QMatrix
+	 * Finds the pair of nodes with the minimal value in the Q Matrix, as defined in this link:
+	 * <a href="https://en.wikipedia.org/wiki/Neighbor_joining">https://en.wikipedia.org/wiki/Neighbor_joining</a>
+	 * The Q values are computed on the fly, without storing the matrix. Only the pairs of distinct nodes are considered,
+	 * the diagonal of the Q Matrix being undefined, and the first minimum in the order of the rows is kept.
+	 * @param distMatrix a distance Matrix of at least two nodes
+	 * @return the indexes of the two nodes, which are always different
 	 */
-	private SquareMatrix computeQMatrix(SquareMatrix distMatrix) {
+	private int[] findMinQPair(SquareMatrix distMatrix) {
 		
 		int N = distMatrix.size();
+		int[] minRowCol = {0,1};
+		double minValue = Double.POSITIVE_INFINITY;
 		
-		SquareMatrix QMatrix = new SquareMatrix(N);
-
-		double[] sumRows = new double[N];
-		double[] sumCols = new double[N];
-		
-		double qValue;
-		
+		//the matrix being symmetric, the sum of a column is the sum of the corresponding row
 		for (int i=0;i<N;i++) {
 			for (int j=0;j<N;j++) {
 				if (i!=j) {
-					
-					if (sumRows[i] == 0) {
-						sumRows[i] = distMatrix.getSumRow(i);
-					}
-					if (sumCols[j] == 0) {
-						sumCols[j] = distMatrix.getSumCol(j);
+					double qValue=(N-2)*distMatrix.get(i,j)-rowSums[j]-rowSums[i];
+					if (qValue<minValue) {
+						minValue = qValue;
+						minRowCol[0] = i;
+						minRowCol[1] = j;
 					}
-					
-					qValue=(N-2)*distMatrix.get(i,j)-sumCols[j]-sumRows[i];
-					
-					QMatrix.set(i,j,qValue);
-					
 				}
 			}
 		}
-		return QMatrix;
+		return minRowCol;
 	}
 	
 	/**
@@ -199,7 +658,115 @@ public class NeighborJoining {
 		System.out.println(wikiMatrix);
 		
 		NeighborJoining NJcluster = new NeighborJoining(wikiMatrix);
-		NJcluster.recursiveJoining(wikiMatrix);
+		NJcluster.cluster();
+		NJcluster.printTree();
+		
+		checkIdenticalSamples();
+		compareRelaxedMode(20, 300, new Random(1));
+	}
+	
+	/**
+	 * Clusters matrices of identical samples, whose distances are all zero, in both modes and checks that every sample
+	 * ends up as a leaf of the tree. The pairs of the diagonal must never be joined, even when no Q value is negative.
+	 */
+	private static void checkIdenticalSamples () {
+		
+		boolean success = true;
+		for (int size=2;size<=8;size++) {
+			for (int mode=0;mode<2;mode++) {
+				SquareMatrix matrix = new SquareMatrix(size);
+				for (int i=0;i<size;i++) {
+					matrix.setLabel("sample"+i, i);
+				}
+				NeighborJoining NJcluster = new NeighborJoining(matrix);
+				NJcluster.setRelaxed(mode == 1);
+				try {
+					NJcluster.cluster();
+					int leaves = countLeaves(NJcluster.getTree().getRoot());
+					if (leaves != size) {
+						System.out.println("identical samples: "+leaves+" leaves instead of "+size+(mode == 1 ? " in relaxed mode" : ""));
+						success = false;
+					}
+				} catch (RuntimeException e) {
+					System.out.println("identical samples: "+e+" for "+size+" samples"+(mode == 1 ? " in relaxed mode" : ""));
+					success = false;
+				}
+			}
+		}
+		System.out.println("identical samples: "+(success ? "ok" : "failed"));
+	}
+	
+	private static int countLeaves (Node root) {
+		int leaves = 0;
+		LinkedList<Node> toVisit = new LinkedList<Node>();
+		toVisit.add(root);
+		while (!toVisit.isEmpty()) {
+			Node n = toVisit.removeLast();
+			if (n.isLeaf()) {
+				leaves++;
+			}
+			toVisit.addAll(n.getChildren());
+		}
+		return leaves;
+	}
+	
+	/**
+	 * Reports how often the relaxed mode gives a topology different from the exact mode, and their running times,
+	 * on datasets of random points of a 5-dimensional space.
+	 * @param datasets the number of datasets
+	 * @param size the number of points per dataset
+	 * @param random the random generator
+	 */
+	private static void compareRelaxedMode (int datasets, int size, Random random) {
+		
+		int different = 0;
+		double sumRF = 0;
+		long exactTime = 0, relaxedTime = 0;
+		
+		for (int d=0;d<datasets;d++) {
+			double[][] points = new double[size][5];
+			for (double[] point:points) {
+				for (int k=0;k<point.length;k++) {
+					point[k] = random.nextDouble();
+				}
+			}
+			
+			Tree[] trees = new Tree[2];
+			for (int mode=0;mode<2;mode++) {
+				SquareMatrix matrix = new SquareMatrix(size);
+				for (int i=0;i<size;i++) {
+					matrix.setLabel("sample"+i, i);
+					for (int j=0;j<size;j++) {
+						double sum = 0;
+						for (int k=0;k<5;k++) {
+							sum += (points[i][k]-points[j][k])*(points[i][k]-points[j][k]);
+						}
+						matrix.set(i, j, Math.sqrt(sum));
+					}
+				}
+				
+				NeighborJoining NJcluster = new NeighborJoining(matrix);
+				NJcluster.setRelaxed(mode == 1);
+				long start = System.nanoTime();
+				NJcluster.cluster();
+				if (mode == 0) {
+					exactTime += System.nanoTime()-start;
+				}else {
+					relaxedTime += System.nanoTime()-start;
+				}
+				trees[mode] = NJcluster.getTree();
+			}
+			
+			int rf = TreeComparison.robinsonFoulds(trees[0], trees[1]);
+			if (rf > 0) {
+				different++;
+			}
+			sumRF += TreeComparison.normalizedRobinsonFoulds(trees[0], trees[1]);
+		}
+		
+		System.out.println("relaxed mode: "+different+"/"+datasets+" topologies differ from the exact mode, "
+				+ "mean normalized Robinson-Foulds distance "+sumRF/datasets+", "
+				+ "exact "+exactTime/1000000+" ms, relaxed "+relaxedTime/1000000+" ms");
 	}
 
 }
@@ -0,0 +1,20 @@
+package clustering;
+
+/**
+ * A listener notified of the progress of a clustering run, typically after each join.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ *
+ */
+public interface ProgressListener {
+	
+	/**
+	 * Called when the clustering has progressed.
+	 * @param remainingNodes the number of nodes still to be joined
+	 * @param totalNodes the number of nodes at the beginning of the clustering
+	 * @param estimatedRemainingMillis the estimated time before the end of the clustering, or -1 if unknown yet
+	 */
+	public void onProgress(int remainingNodes, int totalNodes, long estimatedRemainingMillis);
+
+}
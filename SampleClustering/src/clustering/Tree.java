@@ -35,9 +35,17 @@ public class Tree {
      * @param no
      */
     public void addChildToRoot (Node no) {
+    	no.setParent(this.root);
     	this.root.addChild(no);
     }
     
+    /**
+     * @return the root node of the tree
+     */
+    public Node getRoot() {
+    	return root;
+    }
+    
     /**
      * A method for printing the tree in the console.
      */
@@ -81,6 +89,8 @@ public class Tree {
     	private String label;
     	//the reference to its parent node
         private Node parent;
+        //the length of the branch linking the node to its parent
+        private double branchLength;
         // a list of children node
         private ArrayList<Node> children;
         
@@ -112,6 +122,15 @@ public class Tree {
 		public void setParent(Node parent) {
 			this.parent = parent;
 		}
+		public double getBranchLength() {
+			return branchLength;
+		}
+		public void setBranchLength(double branchLength) {
+			this.branchLength = branchLength;
+		}
+		public boolean isLeaf() {
+			return children.isEmpty();
+		}
 		public List<Node> getChildren() {
 			return children;
 		}
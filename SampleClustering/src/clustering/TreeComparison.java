@@ -0,0 +1,119 @@
+package clustering;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import clustering.Tree.Node;
+
+/**
+ * Compares the topologies of two trees built on the same leaves, with the Robinson-Foulds distance: each internal
+ * branch splits the leaves in two groups, and the distance is the number of splits found in only one of the trees.
+ * The trees are compared as unrooted trees, so that the position of the root does not count.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ */
+public class TreeComparison {
+
+	/**
+	 * @return the number of splits found in only one of the two trees
+	 * @throws IllegalArgumentException if the trees do not have the same leaves
+	 */
+	public static int robinsonFoulds(Tree tree1, Tree tree2) {
+
+		Map<String, Integer> leafIndexes = leafIndexes(tree1);
+		if (!leafIndexes.keySet().equals(leafIndexes(tree2).keySet())) {
+			throw new IllegalArgumentException("The two trees should have the same leaves.");
+		}
+
+		Set<BitSet> splits1 = splits(tree1, leafIndexes);
+		Set<BitSet> splits2 = splits(tree2, leafIndexes);
+
+		int shared = 0;
+		for (BitSet split:splits1) {
+			if (splits2.contains(split)) {
+				shared++;
+			}
+		}
+		return splits1.size()+splits2.size()-2*shared;
+	}
+
+	/**
+	 * @return the Robinson-Foulds distance divided by its maximum for binary trees, 2(n-3) for n leaves
+	 */
+	public static double normalizedRobinsonFoulds(Tree tree1, Tree tree2) {
+		int leaves = leafIndexes(tree1).size();
+		return leaves > 3 ? (double) robinsonFoulds(tree1, tree2)/(2*(leaves-3)) : 0;
+	}
+
+	/**
+	 * @return the index of each leaf, by label
+	 */
+	private static Map<String, Integer> leafIndexes(Tree tree) {
+		Map<String, Integer> indexes = new HashMap<String, Integer>();
+		for (Node n:preOrder(tree)) {
+			if (n.isLeaf()) {
+				indexes.put(n.getLabel(), indexes.size());
+			}
+		}
+		return indexes;
+	}
+
+	/**
+	 * Computes the non trivial splits of a tree, each one being the set of leaves below a branch, or its complement
+	 * when it contains the first leaf, so that both sides of a branch give the same split.
+	 */
+	private static Set<BitSet> splits(Tree tree, Map<String, Integer> leafIndexes) {
+
+		int leaves = leafIndexes.size();
+		List<Node> order = preOrder(tree);
+		Map<Node, BitSet> below = new IdentityHashMap<Node, BitSet>();
+		Set<BitSet> splits = new HashSet<BitSet>();
+
+		//children are visited after their parents in the pre-order
+		for (int i=order.size()-1;i>=0;i--) {
+			Node n = order.get(i);
+			BitSet leafSet = new BitSet(leaves);
+			if (n.isLeaf()) {
+				leafSet.set(leafIndexes.get(n.getLabel()));
+			}
+			for (Node child:n.getChildren()) {
+				leafSet.or(below.remove(child));
+			}
+			below.put(n, leafSet);
+
+			int size = leafSet.cardinality();
+			if (size > 1 && size < leaves-1) {
+				BitSet split = (BitSet) leafSet.clone();
+				if (split.get(0)) {
+					split.flip(0, leaves);
+				}
+				splits.add(split);
+			}
+		}
+		return splits;
+	}
+
+	/**
+	 * @return the nodes of a tree, parents first, without recursion to support deep trees
+	 */
+	private static List<Node> preOrder(Tree tree) {
+		List<Node> order = new ArrayList<Node>();
+		List<Node> stack = new ArrayList<Node>();
+		stack.add(tree.getRoot());
+		while (!stack.isEmpty()) {
+			Node n = stack.remove(stack.size()-1);
+			order.add(n);
+			for (int c=n.getChildren().size()-1;c>=0;c--) {
+				stack.add(n.getChildren().get(c));
+			}
+		}
+		return order;
+	}
+}
@@ -0,0 +1,313 @@
+package clustering;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import clustering.Tree.Node;
+import util.SquareMatrix;
+
+/**
+ * An index built once over a tree to answer the usual questions about a clustering result without walking the tree
+ * for each of them. The nodes are numbered along an Euler tour of the tree, and a sparse table over the depths of the
+ * tour gives the lowest common ancestor (LCA) of two nodes in constant time. The cophenetic distance between two leaves,
+ * i.e. the length of the path linking them through their LCA, follows from the distances of the nodes to the root.
+ * The height of a node is the longest path from the node down to one of its leaves, which is used for flat cuts.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see Tree
+ */
+public class TreeIndex {
+
+	//the nodes, numbered in the order of their first visit
+	private Node[] nodes;
+	private Map<Node, Integer> ids;
+
+	//the parent of each node (-1 for the root), its number of edges and its distance to the root, and its height
+	private int[] parents;
+	private int[] depths;
+	private double[] rootDistances;
+	private double[] heights;
+
+	//the leaves, in the order of the tree, and their indexes by label
+	private int[] leaves;
+	private Map<String, Integer> leafIndexes;
+
+	//the first occurrence of each node in the Euler tour
+	private int[] firstVisits;
+
+	//sparseTable[p][i] is the node of minimal depth in the tour between i and i+2^p-1
+	private int[][] sparseTable;
+
+	/**
+	 * Constructor. Builds the index in O(N.log(N)) time and memory.
+	 * @param tree the tree to be indexed
+	 */
+	public TreeIndex(Tree tree) {
+
+		//number the nodes in depth-first order, without recursion to support deep trees
+		List<Node> order = new ArrayList<Node>();
+		List<Integer> parentList = new ArrayList<Integer>();
+		ids = new IdentityHashMap<Node, Integer>();
+		List<Node> stack = new ArrayList<Node>();
+		List<Integer> stackParents = new ArrayList<Integer>();
+		stack.add(tree.getRoot());
+		stackParents.add(-1);
+		while (!stack.isEmpty()) {
+			Node n = stack.remove(stack.size()-1);
+			int id = order.size();
+			ids.put(n, id);
+			order.add(n);
+			parentList.add(stackParents.remove(stackParents.size()-1));
+			for (int c=n.getChildren().size()-1;c>=0;c--) {
+				stack.add(n.getChildren().get(c));
+				stackParents.add(id);
+			}
+		}
+
+		int size = order.size();
+		nodes = order.toArray(new Node[size]);
+		parents = new int[size];
+		depths = new int[size];
+		rootDistances = new double[size];
+		heights = new double[size];
+
+		List<Integer> leafList = new ArrayList<Integer>();
+		leafIndexes = new HashMap<String, Integer>();
+
+		//parents are numbered before their children
+		for (int id=0;id<size;id++) {
+			parents[id] = parentList.get(id);
+			if (id > 0) {
+				depths[id] = depths[parents[id]]+1;
+				rootDistances[id] = rootDistances[parents[id]]+nodes[id].getBranchLength();
+			}
+			if (nodes[id].isLeaf()) {
+				leafIndexes.put(nodes[id].getLabel(), leafList.size());
+				leafList.add(id);
+			}
+		}
+		leaves = new int[leafList.size()];
+		for (int l=0;l<leaves.length;l++) {
+			leaves[l] = leafList.get(l);
+		}
+
+		//children are numbered after their parents
+		for (int id=size-1;id>0;id--) {
+			heights[parents[id]] = Math.max(heights[parents[id]], heights[id]+nodes[id].getBranchLength());
+		}
+
+		this.buildEulerTour(size);
+	}
+
+	/**
+	 * Builds the Euler tour of the tree (each node being listed every time the tour goes through it) and the sparse table
+	 * over the depths of the tour.
+	 */
+	private void buildEulerTour(int size) {
+
+		int[] tour = new int[2*size-1];
+		firstVisits = new int[size];
+		int length = 0;
+
+		int[] stack = new int[size];
+		int[] nextChild = new int[size];
+		int top = 0;
+		stack[0] = 0;
+		firstVisits[0] = 0;
+		tour[length++] = 0;
+
+		while (top >= 0) {
+			int id = stack[top];
+			List<Node> children = nodes[id].getChildren();
+			if (nextChild[id] < children.size()) {
+				int child = ids.get(children.get(nextChild[id]++));
+				stack[++top] = child;
+				firstVisits[child] = length;
+				tour[length++] = child;
+			}else {
+				top--;
+				if (top >= 0) {
+					tour[length++] = stack[top];
+				}
+			}
+		}
+
+		int levels = 1;
+		while ((1 << levels) <= length) {
+			levels++;
+		}
+		sparseTable = new int[levels][];
+		sparseTable[0] = tour;
+		for (int p=1;p<levels;p++) {
+			int span = 1 << (p-1);
+			int[] previous = sparseTable[p-1];
+			int[] current = new int[length-(1 << p)+1];
+			for (int i=0;i<current.length;i++) {
+				int a = previous[i], b = previous[i+span];
+				current[i] = depths[a] <= depths[b] ? a : b;
+			}
+			sparseTable[p] = current;
+		}
+	}
+
+	/**
+	 * @return the identifier of the lowest common ancestor of two nodes given by their identifiers
+	 */
+	private int lca(int a, int b) {
+		int from = firstVisits[a], to = firstVisits[b];
+		if (from > to) {
+			int tmp = from;
+			from = to;
+			to = tmp;
+		}
+		int p = 31-Integer.numberOfLeadingZeros(to-from+1);
+		int x = sparseTable[p][from], y = sparseTable[p][to-(1 << p)+1];
+		return depths[x] <= depths[y] ? x : y;
+	}
+
+	/**
+	 * @return the lowest common ancestor of two nodes of the tree
+	 */
+	public Node getLowestCommonAncestor(Node a, Node b) {
+		return nodes[this.lca(ids.get(a), ids.get(b))];
+	}
+
+	/**
+	 * @return the lowest common ancestor of two leaves given by their labels
+	 */
+	public Node getLowestCommonAncestor(String labelA, String labelB) {
+		return nodes[this.lca(leaves[this.leafIndex(labelA)], leaves[this.leafIndex(labelB)])];
+	}
+
+	/**
+	 * @return the length of the path between two nodes of the tree
+	 */
+	public double getCopheneticDistance(Node a, Node b) {
+		int idA = ids.get(a), idB = ids.get(b);
+		return rootDistances[idA]+rootDistances[idB]-2*rootDistances[this.lca(idA, idB)];
+	}
+
+	/**
+	 * @return the length of the path between two leaves given by their labels
+	 */
+	public double getCopheneticDistance(String labelA, String labelB) {
+		int idA = leaves[this.leafIndex(labelA)], idB = leaves[this.leafIndex(labelB)];
+		return rootDistances[idA]+rootDistances[idB]-2*rootDistances[this.lca(idA, idB)];
+	}
+
+	/**
+	 * Computes the cophenetic distances between all the leaves.
+	 * @return a square matrix labelled with the leaves, in the order of the tree
+	 */
+	public SquareMatrix getCopheneticMatrix() {
+		SquareMatrix matrix = new SquareMatrix(leaves.length);
+		for (int i=0;i<leaves.length;i++) {
+			matrix.setLabel(nodes[leaves[i]].getLabel(), i);
+			for (int j=0;j<i;j++) {
+				double d = rootDistances[leaves[i]]+rootDistances[leaves[j]]-2*rootDistances[this.lca(leaves[i], leaves[j])];
+				matrix.set(i, j, d);
+				matrix.set(j, i, d);
+			}
+		}
+		return matrix;
+	}
+
+	/**
+	 * Cuts the tree at a given height: each cluster gathers the leaves below a node whose height does not exceed
+	 * the given one, while the height of its parent does. Runs in O(N).
+	 * @param height the height of the cut
+	 * @return the cluster of each leaf, in the order of getLeafLabels, clusters being numbered from 0
+	 */
+	public int[] cutAtHeight(double height) {
+
+		int[] clusterOfNode = new int[nodes.length];
+		int clusters = 0;
+
+		//parents are numbered before their children
+		for (int id=0;id<nodes.length;id++) {
+			if (id > 0 && heights[parents[id]] <= height) {
+				clusterOfNode[id] = clusterOfNode[parents[id]];
+			}else if (heights[id] <= height || nodes[id].isLeaf()) {
+				clusterOfNode[id] = clusters++;
+			}
+		}
+		return this.leafClusters(clusterOfNode);
+	}
+
+	/**
+	 * Cuts the tree into k clusters, by splitting the highest clusters first. When a split node has more than two children,
+	 * the cut may give slightly more than k clusters.
+	 * @param k the number of clusters
+	 * @return the cluster of each leaf, in the order of getLeafLabels, clusters being numbered from 0
+	 */
+	public int[] cutIntoClusters(int k) {
+
+		PriorityQueue<Integer> highest = new PriorityQueue<Integer>(11, (a, b) -> Double.compare(heights[b], heights[a]));
+		boolean[] isCluster = new boolean[nodes.length];
+
+		isCluster[0] = true;
+		highest.add(0);
+		int count = 1;
+
+		while (count < k && !highest.isEmpty()) {
+			int id = highest.poll();
+			if (nodes[id].isLeaf()) {
+				continue;
+			}
+			isCluster[id] = false;
+			count--;
+			for (Node child:nodes[id].getChildren()) {
+				int childId = ids.get(child);
+				isCluster[childId] = true;
+				highest.add(childId);
+				count++;
+			}
+		}
+
+		int[] clusterOfNode = new int[nodes.length];
+		int clusters = 0;
+		for (int id=0;id<nodes.length;id++) {
+			clusterOfNode[id] = isCluster[id] ? clusters++ : (id > 0 ? clusterOfNode[parents[id]] : 0);
+		}
+		return this.leafClusters(clusterOfNode);
+	}
+
+	private int[] leafClusters(int[] clusterOfNode) {
+		int[] clusterOfLeaf = new int[leaves.length];
+		for (int l=0;l<leaves.length;l++) {
+			clusterOfLeaf[l] = clusterOfNode[leaves[l]];
+		}
+		return clusterOfLeaf;
+	}
+
+	private int leafIndex(String label) {
+		Integer index = leafIndexes.get(label);
+		if (index == null) {
+			throw new IllegalArgumentException("Unknown leaf: "+label);
+		}
+		return index;
+	}
+
+	/**
+	 * @return the labels of the leaves, in the order of the tree
+	 */
+	public String[] getLeafLabels() {
+		String[] labels = new String[leaves.length];
+		for (int l=0;l<leaves.length;l++) {
+			labels[l] = nodes[leaves[l]].getLabel();
+		}
+		return labels;
+	}
+
+	/**
+	 * @return the height of a node, i.e. the longest path from the node down to one of its leaves
+	 */
+	public double getHeight(Node n) {
+		return heights[ids.get(n)];
+	}
+}
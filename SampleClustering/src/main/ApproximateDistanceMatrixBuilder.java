@@ -0,0 +1,198 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import clustering.GraphLinkage;
+import clustering.KnnGraph;
+import sample.MinHashSketch;
+import sample.PositionalDistance;
+import sample.Sample;
+import sample.SampleDistance;
+import sample.SampleException;
+import sample.SketchIndex;
+import util.SquareMatrix;
+
+/**
+ * This class builds an approximate distance matrix from MinHash sketches of the samples, instead of comparing all the
+ * pairs of samples. The candidate pairs found by the LSH index, i.e. the pairs of close samples, get their exact
+ * distance, while the distances of all the other pairs are estimated from their sketches.
+ * The estimated proportion of mismatching positions is converted into a distance by a scale factor, calibrated
+ * on a random subset of pairs whose exact distances are computed.
+ * The dense matrix still holds the N(N-1)/2 estimated distances: for large datasets, buildGraph only keeps the
+ * candidate pairs, in a sparse k-nearest-neighbor graph of O(N.k) memory.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see MinHashSketch
+ * @see SketchIndex
+ * @see KnnGraph
+ */
+public class ApproximateDistanceMatrixBuilder {
+
+	private MinHashSketch.Factory factory;
+
+	//the number of bands and the number of hash values per band of the LSH index
+	private int bands;
+	private int rows;
+
+	//the number of random pairs used to calibrate the estimated distances
+	private int calibrationPairs = 1000;
+
+	//the measure used for the exact distances
+	private SampleDistance distance = new PositionalDistance();
+
+	//the candidate pairs found by the last build
+	private Set<Long> candidatePairs;
+
+	/**
+	 * Constructor. The sketches have bands*rows hash values.
+	 * @param bands the number of bands of the LSH index
+	 * @param rows the number of hash values per band
+	 * @param hBins the number of bins of the palette for the Hue
+	 * @param sBins the number of bins of the palette for the Saturation
+	 * @param vBins the number of bins of the palette for the Value
+	 */
+	public ApproximateDistanceMatrixBuilder(int bands, int rows, int hBins, int sBins, int vBins) {
+		this.bands = bands;
+		this.rows = rows;
+		this.factory = new MinHashSketch.Factory(bands*rows, hBins, sBins, vBins, 42);
+	}
+
+	/**
+	 * Builds the approximate distance matrix of a dataset.
+	 * @param dataset the samples, of identical lengths
+	 * @return the square distance matrix, exact for the candidate pairs and estimated for the others
+	 */
+	public SquareMatrix build(LinkedList<Sample> dataset) {
+
+		List<Sample> samples = new ArrayList<Sample>(dataset);
+		int size = samples.size();
+		SketchIndex index = this.index(samples);
+
+		SquareMatrix distanceMatrix = new SquareMatrix(size);
+		for (int i=0;i<size;i++) {
+			distanceMatrix.setLabel(samples.get(i).getLabel(), i);
+		}
+
+		double scale = this.calibrate(samples, index);
+
+		for (int i=0;i<size;i++) {
+			MinHashSketch sketch = index.getSketch(i);
+			for (int j=i+1;j<size;j++) {
+				double d = scale*sketch.estimateMismatch(index.getSketch(j));
+				distanceMatrix.set(i, j, d);
+				distanceMatrix.set(j, i, d);
+			}
+		}
+
+		for (long pair:candidatePairs) {
+			int i = (int) (pair >>> 32);
+			int j = (int) pair;
+			double d = this.exactDistance(samples.get(i), samples.get(j));
+			distanceMatrix.set(i, j, d);
+			distanceMatrix.set(j, i, d);
+		}
+
+		return distanceMatrix;
+	}
+
+	/**
+	 * Builds a sparse graph from the candidate pairs only, without estimating the distances of the other pairs.
+	 * Each sample is linked to its k nearest candidates, by their exact distances.
+	 * @param dataset the samples, of identical lengths
+	 * @param k the maximal number of neighbors per sample
+	 * @return the k-nearest-neighbor graph, where the samples without any candidate have no neighbor
+	 * @see GraphLinkage
+	 */
+	public KnnGraph buildGraph(LinkedList<Sample> dataset, int k) {
+
+		List<Sample> samples = new ArrayList<Sample>(dataset);
+		this.index(samples);
+
+		KnnGraphBuilder builder = new KnnGraphBuilder(k, 1);
+		builder.setDistance(distance);
+		return builder.build(samples, candidatePairs);
+	}
+
+	/**
+	 * Sketches the samples and finds the candidate pairs.
+	 * @return the LSH index of the sketches
+	 */
+	private SketchIndex index(List<Sample> samples) {
+
+		SketchIndex index = new SketchIndex(bands, rows);
+		for (Sample sp:samples) {
+			index.add(factory.sketch(sp));
+		}
+		candidatePairs = index.getCandidatePairs();
+		return index;
+	}
+
+	/**
+	 * Computes the ratio between the exact distances and the estimated proportions of mismatching positions
+	 * over a random subset of pairs. When the dataset has no more pairs than the subset, each pair is used once.
+	 * @return the scale factor, 1 if it cannot be calibrated
+	 */
+	private double calibrate(List<Sample> samples, SketchIndex index) {
+
+		int size = samples.size();
+		if (size < 2) {
+			return 1;
+		}
+
+		double sumExact = 0, sumMismatch = 0;
+		long totalPairs = (long) size*(size-1)/2;
+		if (calibrationPairs >= totalPairs) {
+			for (int i=0;i<size;i++) {
+				for (int j=i+1;j<size;j++) {
+					sumExact += this.exactDistance(samples.get(i), samples.get(j));
+					sumMismatch += index.getSketch(i).estimateMismatch(index.getSketch(j));
+				}
+			}
+		}else {
+			Random random = new Random(size);
+			for (int p=0;p<calibrationPairs;p++) {
+				int i = random.nextInt(size);
+				int j = random.nextInt(size-1);
+				if (j >= i) {
+					j++;
+				}
+				sumExact += this.exactDistance(samples.get(i), samples.get(j));
+				sumMismatch += index.getSketch(i).estimateMismatch(index.getSketch(j));
+			}
+		}
+		return sumMismatch > 0 ? sumExact/sumMismatch : 1;
+	}
+
+	private double exactDistance(Sample sp1, Sample sp2) {
+		try {
+			return distance.calcDistance(sp1, sp2);
+		} catch (SampleException e) {
+			e.printStackTrace();
+			return 0;
+		}
+	}
+
+	/**
+	 * @return the candidate pairs found by the last build, each one encoded as (i&lt;&lt;32)|j with i&lt;j
+	 */
+	public Set<Long> getCandidatePairs() {
+		return candidatePairs;
+	}
+
+	public int getCalibrationPairs() {
+		return calibrationPairs;
+	}
+
+	public void setCalibrationPairs(int calibrationPairs) {
+		this.calibrationPairs = calibrationPairs;
+	}
+
+	public void setDistance(SampleDistance distance) {
+		this.distance = distance;
+	}
+}
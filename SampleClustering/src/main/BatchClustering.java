@@ -0,0 +1,200 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import clustering.NeighborJoining;
+import clustering.Tree;
+import sample.PositionalDistance;
+import sample.Sample;
+import sample.SampleDistance;
+import sample.SampleException;
+import util.MatrixBufferPool;
+import util.SquareMatrix;
+
+/**
+ * This class clusters many independent datasets at once, for instance one per image collection of a batch.
+ * All the jobs share one work-stealing pool: each job computes its distance matrix, split into as many tasks as its
+ * number of distances deserves, then runs the Neighbor Joining. The idle threads steal the tasks of the large jobs,
+ * while the small jobs run on a single thread each, side by side. The arrays of the distance matrices are taken from
+ * a pool of buffers and reused by the next jobs of similar sizes: the Neighbor Joining works within that array until
+ * the end, so a job allocates no other matrix.
+ * Each tree is handed to a listener as soon as its job completes, in no particular order.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see MatrixBufferPool
+ */
+public class BatchClustering {
+
+	/**
+	 * Receives the results of the jobs, from the threads of the pool.
+	 */
+	public interface ResultListener {
+
+		/**
+		 * @param job the index of the dataset
+		 * @param tree the tree of the dataset
+		 */
+		void onResult(int job, Tree tree);
+
+		/**
+		 * @param job the index of the dataset
+		 * @param error the reason why the dataset could not be clustered
+		 */
+		void onFailure(int job, Exception error);
+	}
+
+	//the minimal number of distances computed by a task
+	private static final int MIN_DISTANCES_PER_TASK = 4096;
+
+	private ForkJoinPool pool;
+
+	private MatrixBufferPool buffers;
+
+	//the measure used for the pairwise distances
+	private SampleDistance distance = new PositionalDistance();
+
+	/**
+	 * Constructor.
+	 * @param parallelism the number of threads of the pool
+	 */
+	public BatchClustering(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("At least one thread is required.");
+		}
+		this.pool = new ForkJoinPool(parallelism);
+		this.buffers = new MatrixBufferPool(parallelism);
+	}
+
+	public void setDistance(SampleDistance distance) {
+		this.distance = distance;
+	}
+
+	/**
+	 * Clusters all the datasets, and returns once every job has completed.
+	 * @param datasets the datasets, each one being clustered separately
+	 * @param listener notified as each job completes
+	 */
+	public void run(List<? extends List<Sample>> datasets, ResultListener listener) {
+
+		List<ForkJoinTask<Void>> jobs = new ArrayList<ForkJoinTask<Void>>(datasets.size());
+		for (int job=0;job<datasets.size();job++) {
+			jobs.add(pool.submit(new ClusteringJob(job, datasets.get(job), listener)));
+		}
+		for (ForkJoinTask<Void> job:jobs) {
+			job.quietlyJoin();
+		}
+	}
+
+	/**
+	 * Stops the threads of the pool once the running jobs have completed.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * The clustering of one dataset.
+	 */
+	@SuppressWarnings("serial")
+	private class ClusteringJob extends RecursiveAction {
+
+		private int job;
+		private List<Sample> samples;
+		private ResultListener listener;
+
+		private ClusteringJob(int job, List<Sample> dataset, ResultListener listener) {
+			this.job = job;
+			this.samples = new ArrayList<Sample>(dataset);
+			this.listener = listener;
+		}
+
+		@Override
+		protected void compute() {
+
+			int size = samples.size();
+			double[][] buffer = buffers.acquire(size);
+			Tree tree;
+
+			try {
+				this.fillDistances(buffer);
+
+				SquareMatrix distanceMatrix = new SquareMatrix(buffer, size);
+				for (int i=0;i<size;i++) {
+					distanceMatrix.setLabel(samples.get(i).getLabel(), i);
+				}
+
+				NeighborJoining NJCluster = new NeighborJoining(distanceMatrix);
+				NJCluster.cluster();
+				tree = NJCluster.getTree();
+			} catch (RuntimeException e) {
+				listener.onFailure(job, e);
+				return;
+			} finally {
+				//the Neighbor Joining compacts the matrix within the buffer, which is free once it has completed
+				buffers.release(buffer);
+			}
+			listener.onResult(job, tree);
+		}
+
+		/**
+		 * Computes the distance matrix, split into interleaved rows when it holds enough distances for several tasks.
+		 */
+		private void fillDistances(double[][] buffer) {
+
+			int size = samples.size();
+			long distances = (long) size*(size-1)/2;
+			int tasks = (int) Math.max(1, Math.min(pool.getParallelism(), distances/MIN_DISTANCES_PER_TASK));
+
+			if (tasks == 1) {
+				new RowTask(buffer, 0, 1).compute();
+			}else {
+				List<RowTask> rowTasks = new ArrayList<RowTask>(tasks);
+				for (int t=0;t<tasks;t++) {
+					rowTasks.add(new RowTask(buffer, t, tasks));
+				}
+				invokeAll(rowTasks);
+			}
+		}
+
+		/**
+		 * The rows first, first+step, first+2.step... of the upper triangle of a distance matrix, mirrored into
+		 * the lower triangle.
+		 */
+		private class RowTask extends RecursiveAction {
+
+			private double[][] buffer;
+			private int first;
+			private int step;
+
+			private RowTask(double[][] buffer, int first, int step) {
+				this.buffer = buffer;
+				this.first = first;
+				this.step = step;
+			}
+
+			@Override
+			protected void compute() {
+				int size = samples.size();
+				for (int i=first;i<size;i+=step) {
+					//distance is 0 when a sample is compared to itself
+					buffer[i][i] = 0;
+					for (int j=i+1;j<size;j++) {
+						double d;
+						try {
+							d = distance.calcDistance(samples.get(i), samples.get(j));
+						} catch (SampleException e) {
+							throw new IllegalStateException("Error: the samples "+samples.get(i).getLabel()+" and "+samples.get(j).getLabel()+" cannot be compared.", e);
+						}
+						buffer[i][j] = d;
+						buffer[j][i] = d;
+					}
+				}
+			}
+		}
+	}
+}
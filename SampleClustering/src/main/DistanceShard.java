@@ -0,0 +1,254 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import sample.Sample;
+import sample.SampleDistance;
+import sample.SampleException;
+import util.SquareMatrix;
+
+/**
+ * This class represents a shard of the pairwise distance matrix, i.e. a rectangular block delimited by a range of rows
+ * and a range of columns. Shards are computed independently from each other, typically by separate worker processes,
+ * and are stored in binary files that can be merged back into a full distance matrix.
+ * Only the upper triangle of the matrix needs to be computed since the distance is symmetric: the blocks are taken
+ * above the diagonal, and the blocks crossing the diagonal only compute their upper half, mirrored into the lower one.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see ShardedDistanceMatrixBuilder
+ */
+public class DistanceShard {
+
+	//a magic number written at the beginning of each shard file
+	private static final int MAGIC = 0x53484431;
+
+	//the first row (inclusive) and the last row (exclusive) of the block
+	private int rowStart;
+	private int rowEnd;
+
+	//the first column (inclusive) and the last column (exclusive) of the block
+	private int colStart;
+	private int colEnd;
+
+	//the checksum of the dataset the shard has been computed from
+	private long datasetId;
+
+	//the distances of the block, stored row by row
+	private double[] values;
+
+	/**
+	 * Constructor. Defines the boundaries of the block, end indexes being exclusive.
+	 * @param rowStart the first row of the block
+	 * @param rowEnd the row following the last row of the block
+	 * @param colStart the first column of the block
+	 * @param colEnd the column following the last column of the block
+	 */
+	public DistanceShard(int rowStart, int rowEnd, int colStart, int colEnd) {
+		this.rowStart = rowStart;
+		this.rowEnd = rowEnd;
+		this.colStart = colStart;
+		this.colEnd = colEnd;
+	}
+
+	/**
+	 * Computes the pairwise distances between the samples of the block.
+	 * @param dataset the whole dataset, indexed the same way as the distance matrix
+	 * @param distance the measure used for the pairwise distances
+	 */
+	public void compute(List<Sample> dataset, SampleDistance distance) {
+
+		//random access to the samples
+		List<Sample> samples = new ArrayList<Sample>(dataset);
+		int width = colEnd-colStart;
+		values = new double[(rowEnd-rowStart)*width];
+
+		for (int i=rowStart;i<rowEnd;i++) {
+			Sample sp1 = samples.get(i);
+			//the cells under the diagonal are mirrored from the upper ones
+			for (int j=Math.max(colStart, i+1);j<colEnd;j++) {
+				double d = 0;
+				try {
+					d = distance.calcDistance(sp1, samples.get(j));
+				} catch (SampleException e) {
+					e.printStackTrace();
+				}
+				values[(i-rowStart)*width+j-colStart] = d;
+				if (j < rowEnd && i >= colStart) {
+					values[(j-rowStart)*width+i-colStart] = d;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies the distances of the block into a distance matrix, as well as their symmetric counterparts.
+	 * @param distanceMatrix the matrix being assembled
+	 */
+	public void copyInto(SquareMatrix distanceMatrix) {
+		int k = 0;
+		for (int i=rowStart;i<rowEnd;i++) {
+			for (int j=colStart;j<colEnd;j++) {
+				distanceMatrix.set(i, j, values[k]);
+				distanceMatrix.set(j, i, values[k]);
+				k++;
+			}
+		}
+	}
+
+	/**
+	 * Writes the shard in a binary file. The content is first written in a temporary file which is then renamed,
+	 * so that a partially written shard is never mistaken for a complete one.
+	 * @param file the destination file
+	 * @throws IOException
+	 */
+	public void write(File file) throws IOException {
+
+		File tmpFile = new File(file.getPath()+".tmp");
+		CRC32 crc = new CRC32();
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+			out.writeInt(MAGIC);
+			out.writeLong(datasetId);
+			out.writeInt(rowStart);
+			out.writeInt(rowEnd);
+			out.writeInt(colStart);
+			out.writeInt(colEnd);
+
+			//the values are followed by their checksum
+			DataOutputStream checkedOut = new DataOutputStream(new CheckedOutputStream(out, crc));
+			for (double value:values) {
+				checkedOut.writeDouble(value);
+			}
+			checkedOut.flush();
+			out.writeLong(crc.getValue());
+		}
+
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Error: unable to replace the shard file "+file);
+		}
+		if (!tmpFile.renameTo(file)) {
+			throw new IOException("Error: unable to rename the shard file "+tmpFile);
+		}
+	}
+
+	/**
+	 * Reads a shard from a binary file and checks its integrity.
+	 * @param file the shard file
+	 * @return the shard with its distances
+	 * @throws IOException if the file is missing, truncated or corrupted
+	 */
+	public static DistanceShard read(File file) throws IOException {
+
+		CRC32 crc = new CRC32();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Error: "+file+" is not a shard file.");
+			}
+			long datasetId = in.readLong();
+			DistanceShard shard = new DistanceShard(in.readInt(), in.readInt(), in.readInt(), in.readInt());
+			shard.datasetId = datasetId;
+
+			int count = (shard.rowEnd-shard.rowStart)*(shard.colEnd-shard.colStart);
+			shard.values = new double[count];
+
+			DataInputStream checkedIn = new DataInputStream(new CheckedInputStream(in, crc));
+			for (int k=0;k<count;k++) {
+				shard.values[k] = checkedIn.readDouble();
+			}
+			if (in.readLong() != crc.getValue()) {
+				throw new IOException("Error: the shard file "+file+" is corrupted.");
+			}
+			return shard;
+		} catch (EOFException e) {
+			throw new IOException("Error: the shard file "+file+" is truncated.", e);
+		}
+	}
+
+	/**
+	 * @return the name of the file holding this shard
+	 */
+	public String getFileName() {
+		return "shard_"+rowStart+"_"+colStart+".bin";
+	}
+
+	/**
+	 * @return true if the shard has the same boundaries and comes from the same dataset as the other one
+	 */
+	public boolean hasSameBlock(DistanceShard other) {
+		return datasetId == other.datasetId && rowStart == other.rowStart && rowEnd == other.rowEnd
+				&& colStart == other.colStart && colEnd == other.colEnd;
+	}
+
+	public long getDatasetId() {
+		return datasetId;
+	}
+
+	public void setDatasetId(long datasetId) {
+		this.datasetId = datasetId;
+	}
+
+	public int getRowStart() {
+		return rowStart;
+	}
+
+	public int getRowEnd() {
+		return rowEnd;
+	}
+
+	public int getColStart() {
+		return colStart;
+	}
+
+	public int getColEnd() {
+		return colEnd;
+	}
+
+	@Override
+	public String toString() {
+		return "shard ["+rowStart+","+rowEnd+")x["+colStart+","+colEnd+")";
+	}
+
+	/**
+	 * The entry point of a worker process. It computes a single shard and writes it in the shard directory.
+	 * Expected arguments: the dataset file, holding the samples and the distance measure, the shard directory, and the
+	 * boundaries of the block (rowStart rowEnd colStart colEnd).
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		if (args.length != 6) {
+			System.err.println("Usage: DistanceShard <dataset file> <shard directory> <rowStart> <rowEnd> <colStart> <colEnd>");
+			System.exit(2);
+		}
+
+		try {
+			File datasetFile = new File(args[0]);
+			LinkedList<Sample> dataset = ShardedDistanceMatrixBuilder.readDataset(datasetFile);
+			SampleDistance distance = ShardedDistanceMatrixBuilder.readDistance(datasetFile);
+			DistanceShard shard = new DistanceShard(Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+					Integer.parseInt(args[4]), Integer.parseInt(args[5]));
+			shard.setDatasetId(ShardedDistanceMatrixBuilder.checksum(datasetFile));
+			shard.compute(dataset, distance);
+			shard.write(new File(args[1], shard.getFileName()));
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+}
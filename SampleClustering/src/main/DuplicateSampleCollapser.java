@@ -0,0 +1,144 @@
+package main;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import clustering.Tree;
+import clustering.Tree.Node;
+import sample.Sample;
+
+/**
+ * This class collapses the samples having exactly the same elements into a single representative before the
+ * clustering, so that the distance matrix and the Neighbor Joining only deal with distinct samples.
+ * The duplicates are expanded back into the resulting tree as siblings of their representative, with a branch length
+ * of zero. The representatives are clustered as single samples, whatever the number of samples they stand for: their
+ * multiplicities are not carried into the sums of the rows of the Neighbor Joining, so the Q values of the other pairs
+ * are the ones of a dataset without duplicates. The resulting tree is exactly the one of the Neighbor Joining over the
+ * whole dataset in which each group of duplicates is joined first (joining two samples at distance zero gives a node
+ * with the same distances as either of them, and branches of length zero). When the Neighbor Joining over the whole
+ * dataset would join another pair before completing a group of duplicates, the trees may differ.
+ * Samples are identified by their label, which should therefore be unique within the dataset.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ */
+public class DuplicateSampleCollapser {
+
+	//the distinct samples, in the order of their first occurrence in the dataset
+	private LinkedList<Sample> representatives;
+
+	//the duplicates of each representative, indexed by the label of the representative
+	private Map<String, List<Sample>> duplicates;
+
+	/**
+	 * Constructor. Collapses the duplicates of the dataset.
+	 * @param dataset the samples to be clustered
+	 */
+	public DuplicateSampleCollapser(List<Sample> dataset) {
+
+		representatives = new LinkedList<Sample>();
+		duplicates = new HashMap<String, List<Sample>>();
+
+		//samples are hashed on their content, regardless of their label
+		Map<Sample, Sample> firstOccurrences = new HashMap<Sample, Sample>();
+
+		for (Sample sp:dataset) {
+			Sample representative = firstOccurrences.get(sp);
+			if (representative == null) {
+				firstOccurrences.put(sp, sp);
+				representatives.add(sp);
+			}else {
+				List<Sample> copies = duplicates.get(representative.getLabel());
+				if (copies == null) {
+					copies = new ArrayList<Sample>();
+					duplicates.put(representative.getLabel(), copies);
+				}
+				copies.add(sp);
+			}
+		}
+	}
+
+	/**
+	 * @return the distinct samples to be clustered
+	 */
+	public LinkedList<Sample> getRepresentatives() {
+		return representatives;
+	}
+
+	/**
+	 * @return the number of samples that have been collapsed into their representative
+	 */
+	public int getDuplicateCount() {
+		int count = 0;
+		for (List<Sample> copies:duplicates.values()) {
+			count += copies.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Inserts the duplicates back into a tree built from the representatives. Each leaf standing for duplicated samples
+	 * is replaced by a node grouping the representative and its duplicates as zero-length sibling leaves.
+	 * @param tree the tree built by clustering the representatives
+	 */
+	public void expand(Tree tree) {
+
+		//collect the leaves first since the tree is modified afterwards
+		List<Node> leaves = new ArrayList<Node>();
+		Deque<Node> toVisit = new ArrayDeque<Node>();
+		toVisit.push(tree.getRoot());
+		while (!toVisit.isEmpty()) {
+			Node n = toVisit.pop();
+			if (n.isLeaf() && n != tree.getRoot()) {
+				leaves.add(n);
+			}
+			for (Node child:n.getChildren()) {
+				toVisit.push(child);
+			}
+		}
+
+		for (Node leaf:leaves) {
+			List<Sample> copies = duplicates.get(leaf.getLabel());
+			if (copies != null) {
+				this.expandLeaf(tree, leaf, copies);
+			}
+		}
+	}
+
+	/**
+	 * Replaces a leaf with a node grouping the leaf and its duplicates.
+	 * @param tree the tree
+	 * @param leaf the leaf of a representative
+	 * @param copies the duplicates of the representative
+	 */
+	private void expandLeaf(Tree tree, Node leaf, List<Sample> copies) {
+
+		StringBuilder label = new StringBuilder(leaf.getLabel());
+		for (Sample sp:copies) {
+			label.append("_").append(sp.getLabel());
+		}
+
+		Node group = new Node(label.toString());
+		group.setBranchLength(leaf.getBranchLength());
+
+		Node parent = leaf.getParent() == null ? tree.getRoot() : leaf.getParent();
+		parent.getChildren().set(parent.getChildren().indexOf(leaf), group);
+		group.setParent(parent);
+
+		leaf.setParent(group);
+		leaf.setBranchLength(0);
+		group.addChild(leaf);
+
+		for (Sample sp:copies) {
+			Node copy = new Node(sp.getLabel());
+			copy.setParent(group);
+			copy.setBranchLength(0);
+			group.addChild(copy);
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package main;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import clustering.KnnGraph;
+import sample.PositionalDistance;
+import sample.Sample;
+import sample.SampleDistance;
+import sample.SampleException;
+
+/**
+ * This class builds the k-nearest-neighbor graph of a dataset, to be clustered by the GraphLinkage when the dataset
+ * is too large for a distance matrix. The neighbors of each sample are either searched exactly among all the other
+ * samples, in parallel and without storing more than k distances per sample, or only among the candidate pairs given
+ * by an index such as the SketchIndex.
+ * The pairs of samples that cannot be compared (e.g. samples of different lengths) are left out of the graph, so that
+ * the samples without any comparable neighbor end up in separate components. Such failures are reported once per build
+ * and counted.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see clustering.GraphLinkage
+ */
+public class KnnGraphBuilder {
+
+	//the number of neighbors per sample
+	private int k;
+
+	//the number of threads searching the neighbors
+	private int threads;
+
+	//the measure used for the pairwise distances
+	private SampleDistance distance = new PositionalDistance();
+
+	//the number of pairs which could not be compared during the last build
+	private AtomicLong failedPairs = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 * @param k the number of neighbors per sample
+	 * @param threads the number of threads searching the neighbors
+	 */
+	public KnnGraphBuilder(int k, int threads) {
+		if (k < 1 || threads < 1) {
+			throw new IllegalArgumentException("The number of neighbors and threads should be positive.");
+		}
+		this.k = k;
+		this.threads = threads;
+	}
+
+	public void setDistance(SampleDistance distance) {
+		this.distance = distance;
+	}
+
+	/**
+	 * @return the number of pairs of samples which could not be compared during the last build, and have been left out
+	 */
+	public long getFailedPairs() {
+		return failedPairs.get();
+	}
+
+	/**
+	 * Searches the exact k nearest neighbors of each sample.
+	 * @param dataset the samples
+	 * @return the k-nearest-neighbor graph
+	 * @throws InterruptedException
+	 */
+	public KnnGraph build(List<Sample> dataset) throws InterruptedException {
+
+		final List<Sample> samples = new ArrayList<Sample>(dataset);
+		final KnnGraph graph = new KnnGraph(labels(samples), Math.min(k, Math.max(1, samples.size()-1)));
+		final int size = samples.size();
+		failedPairs.set(0);
+
+		//the samples are split into one block per task, interleaved to balance the load
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (int t=0;t<threads;t++) {
+				final int first = t;
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						Neighbors nearest = new Neighbors(graph.getK());
+						for (int i=first;i<size;i+=threads) {
+							nearest.clear();
+							for (int j=0;j<size;j++) {
+								if (j != i) {
+									double d = calcDistance(samples.get(i), samples.get(j));
+									if (!Double.isNaN(d)) {
+										nearest.offer(j, d);
+									}
+								}
+							}
+							nearest.copyInto(graph, i);
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> future:futures) {
+				future.get();
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error: the search of the neighbors failed.", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return graph;
+	}
+
+	/**
+	 * Searches the k nearest neighbors of each sample among its candidate pairs only.
+	 * @param dataset the samples
+	 * @param candidatePairs the pairs of samples to be compared, each one encoded as (i&lt;&lt;32)|j with i&lt;j
+	 * @return the k-nearest-neighbor graph, where some samples may have fewer than k neighbors
+	 * @see sample.SketchIndex#getCandidatePairs()
+	 */
+	public KnnGraph build(List<Sample> dataset, Set<Long> candidatePairs) {
+
+		List<Sample> samples = new ArrayList<Sample>(dataset);
+		KnnGraph graph = new KnnGraph(labels(samples), k);
+		failedPairs.set(0);
+
+		Neighbors[] nearest = new Neighbors[samples.size()];
+		for (long pair:candidatePairs) {
+			int i = (int) (pair >>> 32);
+			int j = (int) pair;
+			double d = this.calcDistance(samples.get(i), samples.get(j));
+			if (!Double.isNaN(d)) {
+				this.offer(nearest, i, j, d);
+				this.offer(nearest, j, i, d);
+			}
+		}
+		for (int i=0;i<samples.size();i++) {
+			if (nearest[i] != null) {
+				nearest[i].copyInto(graph, i);
+				//the candidates of this sample are no longer needed
+				nearest[i] = null;
+			}
+		}
+		return graph;
+	}
+
+	private void offer(Neighbors[] nearest, int i, int j, double d) {
+		if (nearest[i] == null) {
+			nearest[i] = new Neighbors(k);
+		}
+		nearest[i].offer(j, d);
+	}
+
+	/**
+	 * @return the distance between two samples, or NaN if they cannot be compared
+	 */
+	private double calcDistance(Sample sp1, Sample sp2) {
+		try {
+			return distance.calcDistance(sp1, sp2);
+		} catch (SampleException e) {
+			//only the first failure is reported, the others being counted
+			if (failedPairs.getAndIncrement() == 0) {
+				System.err.println(e.getMessage()+" The pairs of samples which cannot be compared are left out of the graph.");
+			}
+			return Double.NaN;
+		}
+	}
+
+	private static String[] labels(List<Sample> samples) {
+		String[] labels = new String[samples.size()];
+		for (int i=0;i<labels.length;i++) {
+			labels[i] = samples.get(i).getLabel();
+		}
+		return labels;
+	}
+
+	/**
+	 * The k nearest neighbors found so far for a sample, kept in a bounded max-heap so that the farthest one
+	 * is replaced first.
+	 */
+	private static class Neighbors {
+
+		private int[] indexes;
+		private double[] distances;
+		private int count;
+
+		Neighbors(int k) {
+			indexes = new int[k];
+			distances = new double[k];
+		}
+
+		void clear() {
+			count = 0;
+		}
+
+		void offer(int index, double distance) {
+			if (count < indexes.length) {
+				//sift up the new neighbor
+				int c = count++;
+				while (c > 0 && distances[(c-1)/2] < distance) {
+					indexes[c] = indexes[(c-1)/2];
+					distances[c] = distances[(c-1)/2];
+					c = (c-1)/2;
+				}
+				indexes[c] = index;
+				distances[c] = distance;
+			}else if (distance < distances[0]) {
+				//replace the farthest neighbor and sift it down
+				int c = 0;
+				while (2*c+1 < count) {
+					int child = 2*c+1;
+					if (child+1 < count && distances[child+1] > distances[child]) {
+						child++;
+					}
+					if (distances[child] <= distance) {
+						break;
+					}
+					indexes[c] = indexes[child];
+					distances[c] = distances[child];
+					c = child;
+				}
+				indexes[c] = index;
+				distances[c] = distance;
+			}
+		}
+
+		void copyInto(KnnGraph graph, int node) {
+			graph.setNeighbors(node, indexes, distances, count);
+		}
+	}
+}
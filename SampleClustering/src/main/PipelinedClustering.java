@@ -0,0 +1,225 @@
+package main;
+
+import java.util.Iterator;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import clustering.NeighborJoining;
+import clustering.Tree;
+import sample.PositionalDistance;
+import sample.Sample;
+import sample.SampleDistance;
+import sample.SampleException;
+import util.SquareMatrix;
+
+/**
+ * This class runs the whole clustering process as a pipeline, instead of building all the samples, then the whole
+ * distance matrix, and only then clustering them. Samples are pulled one by one from a source (e.g. images being read),
+ * and as soon as a sample arrives, a pool of workers computes its distances to all the previous samples while the next
+ * samples are being pulled. The sums of the rows needed by the Neighbor Joining are accumulated as the rows complete.
+ * The rows being computed hold a share of a memory budget: when the budget is exhausted, no more samples are pulled
+ * until some rows complete, so that a fast source cannot flood the workers.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ */
+public class PipelinedClustering {
+
+	//the number of threads computing the rows of the distance matrix
+	private int workers;
+
+	//the memory that the rows being computed may hold, in kilobytes
+	private int memoryBudgetKb;
+
+	//the measure used for the pairwise distances
+	private SampleDistance distance = new PositionalDistance();
+
+	//the samples received so far; the array is replaced when it grows, after the samples have been copied
+	private volatile Sample[] samples;
+
+	//the distances of each sample to the previous ones, i.e. the lower triangle of the matrix
+	private double[][] lowerRows;
+
+	//the sums of the rows of the matrix, accumulated as the rows complete
+	private double[] rowSums;
+
+	/**
+	 * Constructor.
+	 * @param workers the number of threads computing the distances
+	 * @param memoryBudgetBytes the memory that the rows being computed may hold
+	 */
+	public PipelinedClustering(int workers, long memoryBudgetBytes) {
+		if (workers < 1 || memoryBudgetBytes < 1024) {
+			throw new IllegalArgumentException("At least one worker and one kilobyte of memory are required.");
+		}
+		this.workers = workers;
+		this.memoryBudgetKb = (int) Math.min(Integer.MAX_VALUE, memoryBudgetBytes/1024);
+	}
+
+	public void setDistance(SampleDistance distance) {
+		this.distance = distance;
+	}
+
+	/**
+	 * Runs the pipeline until the source is exhausted, then clusters the samples.
+	 * @param source the samples, possibly produced lazily
+	 * @return the tree of the samples
+	 * @throws InterruptedException
+	 */
+	public Tree run(Iterator<Sample> source) throws InterruptedException {
+
+		NeighborJoining NJCluster = new NeighborJoining(this.buildDistanceMatrix(source), rowSums);
+		NJCluster.cluster();
+		return NJCluster.getTree();
+	}
+
+	/**
+	 * Pulls the samples from the source and computes their distances as they arrive.
+	 * @param source the samples
+	 * @return the square distance matrix
+	 * @throws InterruptedException
+	 */
+	private SquareMatrix buildDistanceMatrix(Iterator<Sample> source) throws InterruptedException {
+
+		samples = new Sample[16];
+		lowerRows = new double[16][];
+		rowSums = new double[16];
+		int size = 0;
+
+		ExecutorService executor = Executors.newFixedThreadPool(workers);
+		CompletionService<double[]> completion = new ExecutorCompletionService<double[]>(executor);
+		Semaphore budget = new Semaphore(memoryBudgetKb);
+		int pending = 0;
+
+		try {
+			while (source.hasNext()) {
+				Sample sp = source.next();
+
+				if (size == samples.length) {
+					this.grow(size*2);
+				}
+				samples[size] = sp;
+				final int row = size++;
+
+				//the row holds 8 bytes per previous sample until it is accumulated: wait for rows to complete when the budget is exhausted
+				while (!budget.tryAcquire(this.rowCost(row))) {
+					this.accumulate(completion.take(), budget);
+					pending--;
+				}
+				completion.submit(() -> this.computeRow(row));
+				pending++;
+
+				//accumulate the rows completed in the meantime
+				for (Future<double[]> done = completion.poll(); done != null; done = completion.poll()) {
+					this.accumulate(done, budget);
+					pending--;
+				}
+			}
+			for (;pending>0;pending--) {
+				this.accumulate(completion.take(), budget);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return this.toSquareMatrix(size);
+	}
+
+	/**
+	 * Computes the distances between a sample and all the previous ones.
+	 * @param row the index of the sample
+	 * @return the distances to the previous samples, whose number is the index of the sample
+	 */
+	private double[] computeRow(int row) {
+		Sample[] received = samples;
+		double[] distances = new double[row];
+		for (int j=0;j<row;j++) {
+			try {
+				distances[j] = distance.calcDistance(received[row], received[j]);
+			} catch (SampleException e) {
+				e.printStackTrace();
+			}
+		}
+		return distances;
+	}
+
+	/**
+	 * Stores a completed row, adds it to the sums of the rows and releases its share of the memory budget.
+	 */
+	private void accumulate(Future<double[]> done, Semaphore budget) throws InterruptedException {
+		double[] distances;
+		try {
+			distances = done.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Error: the computation of a row failed.", e.getCause());
+		}
+		int row = distances.length;
+		lowerRows[row] = distances;
+		for (int j=0;j<row;j++) {
+			rowSums[row] += distances[j];
+			rowSums[j] += distances[j];
+		}
+		budget.release(this.rowCost(row));
+	}
+
+	/**
+	 * @return the share of the memory budget held by a row, in kilobytes
+	 */
+	private int rowCost(int row) {
+		return (int) Math.min(memoryBudgetKb, Math.max(1, (8L*row)/1024));
+	}
+
+	/**
+	 * Enlarges the arrays holding the samples and the rows. Only the thread pulling the samples accesses them, except for
+	 * the samples that are read by the workers: the new array is published once the samples have been copied, so that
+	 * the workers see all the previous samples whichever array they read.
+	 */
+	private void grow(int capacity) {
+		Sample[] newSamples = new Sample[capacity];
+		System.arraycopy(samples, 0, newSamples, 0, samples.length);
+		double[] newSums = new double[capacity];
+		System.arraycopy(rowSums, 0, newSums, 0, rowSums.length);
+		double[][] newRows = new double[capacity][];
+		System.arraycopy(lowerRows, 0, newRows, 0, lowerRows.length);
+		lowerRows = newRows;
+		rowSums = newSums;
+		samples = newSamples;
+	}
+
+	/**
+	 * Turns the lower triangle into a square matrix, releasing each row of the triangle as soon as it is no longer needed.
+	 * @param size the number of samples
+	 * @return the square distance matrix
+	 */
+	private SquareMatrix toSquareMatrix(int size) {
+
+		double[][] matrix = new double[size][];
+		for (int i=0;i<size;i++) {
+			matrix[i] = new double[size];
+			System.arraycopy(lowerRows[i], 0, matrix[i], 0, i);
+			for (int j=i+1;j<size;j++) {
+				matrix[i][j] = lowerRows[j][i];
+			}
+			//the previous rows have all been copied
+			lowerRows[i] = null;
+		}
+
+		SquareMatrix distanceMatrix = new SquareMatrix(matrix);
+		for (int i=0;i<size;i++) {
+			distanceMatrix.setLabel(samples[i].getLabel(), i);
+		}
+
+		double[] sums = new double[size];
+		System.arraycopy(rowSums, 0, sums, 0, size);
+		rowSums = sums;
+
+		samples = null;
+		lowerRows = null;
+		return distanceMatrix;
+	}
+}
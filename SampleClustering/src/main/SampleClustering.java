@@ -1,12 +1,27 @@
 package main;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
+import clustering.CancellationToken;
+import clustering.GraphLinkage;
 import clustering.NeighborJoining;
+import clustering.ProgressListener;
+import clustering.Tree;
+import sample.EncodedSample;
+import sample.MaskedDistance;
+import sample.PositionalDistance;
 import sample.Sample;
+import sample.SampleDistance;
 import sample.SampleElementColor;
 import sample.SampleElementException;
 import sample.SampleException;
+import sample.SignatureDistance;
 import util.SquareMatrix;
 
 /**
@@ -23,6 +38,12 @@ public class SampleClustering {
 	
 	private LinkedList<Sample> dataset;
 	
+	//whether identical samples are collapsed into a single one before the clustering
+	private boolean collapseDuplicates;
+	
+	//the measure used for the pairwise distances
+	private SampleDistance distance = new PositionalDistance();
+	
 	public SampleClustering() {
 		
 	}
@@ -33,13 +54,140 @@ public class SampleClustering {
 	
 	/**
 	 * The main method launching the clustering process. It computes a distance matrix from the dataset and cluster
-	 * the samples using the NeighborJoining method.
+	 * the samples using the NeighborJoining method. When enabled, identical samples are collapsed beforehand.
 	 *  
 	 */
 	public void clusterData () {
 		
+		//Prints a basic tree in the console
+		this.buildTree(null, null).print();
+	}
+	
+	/**
+	 * Runs the clustering process asynchronously and returns the resulting tree instead of printing it.
+	 * The process stops between two rows of the distance matrix or two joins if the token is cancelled or its
+	 * deadline passes, as well as when the returned future is cancelled. In both cases the future ends up
+	 * cancelled: isCancelled returns true and get throws a CancellationException.
+	 * @param executor the executor running the clustering
+	 * @param listener notified after each join with the remaining nodes and the estimated remaining time, may be null
+	 * @param token the cancellation token, may be null
+	 * @return a future completed with the tree once the clustering is done
+	 * @see CancellationToken#supplyAsync(java.util.function.Supplier, Executor)
+	 */
+	public CompletableFuture<Tree> clusterDataAsync (Executor executor, final ProgressListener listener, CancellationToken token) {
+		
+		final CancellationToken runToken = token == null ? new CancellationToken() : token;
+		
+		return runToken.supplyAsync(() -> this.buildTree(listener, runToken), executor);
+	}
+	
+	/**
+	 * Builds the distance matrix and clusters the samples.
+	 * @param listener notified after each join, may be null
+	 * @param token checked between two rows of the matrix and two joins, may be null
+	 * @return the tree of the samples
+	 */
+	private Tree buildTree (ProgressListener listener, CancellationToken token) {
+		
+		LinkedList<Sample> samples = dataset;
+		DuplicateSampleCollapser collapser = null;
+		
+		if (collapseDuplicates) {
+			//only distinct samples are clustered, their duplicates are added back into the tree afterwards
+			collapser = new DuplicateSampleCollapser(dataset);
+			samples = collapser.getRepresentatives();
+		}
+		
 		//first, build  the pairwise Distance Matrix 
-		SquareMatrix distanceMatrix = this.buildDistanceMatrix();
+		SquareMatrix distanceMatrix = this.buildDistanceMatrix(samples, token);
+		
+		//THen compute the clustering with the Neighbour Joining algorithm
+		NeighborJoining NJCluster = new NeighborJoining(distanceMatrix);
+		NJCluster.setProgressListener(listener);
+		NJCluster.setCancellationToken(token);
+		NJCluster.cluster();
+		
+		if (collapser != null) {
+			collapser.expand(NJCluster.getTree());
+		}
+		return NJCluster.getTree();
+	}
+	
+	/**
+	 * Clusters large datasets without any distance matrix: the k nearest neighbors of each sample are searched,
+	 * and the resulting sparse graph is clustered by single linkage. The memory is O(N.k) instead of O(N.N).
+	 * @param k the number of neighbors per sample
+	 * @param threads the number of threads searching the neighbors
+	 * @return the tree of the samples
+	 * @throws InterruptedException
+	 * @see GraphLinkage
+	 */
+	public Tree clusterKnnGraph (int k, int threads) throws InterruptedException {
+		
+		KnnGraphBuilder builder = new KnnGraphBuilder(k, threads);
+		builder.setDistance(distance);
+		
+		return new GraphLinkage(builder.build(dataset)).cluster();
+	}
+	
+	/**
+	 * Clusters large datasets whose distance matrix is computed in shards by several worker processes, which use the
+	 * distance measure of this instance.
+	 * @param workDir the working directory, which must be visible to all the workers
+	 * @param blockSize the number of rows and columns of a shard
+	 * @param maxWorkers the maximum number of workers running at the same time
+	 * @throws IOException if some shards could not be computed
+	 * @throws InterruptedException
+	 * @see ShardedDistanceMatrixBuilder
+	 */
+	public void clusterSharded (File workDir, int blockSize, int maxWorkers) throws IOException, InterruptedException {
+		
+		ShardedDistanceMatrixBuilder builder = new ShardedDistanceMatrixBuilder(workDir, blockSize, maxWorkers);
+		builder.setDistance(distance);
+		
+		this.clusterData(builder.build(dataset));
+	}
+	
+	/**
+	 * Clusters samples held in a compact representation, such as run-length encoded samples, without converting
+	 * them back into samples made of SampleElementColor objects. The samples are compared with their own distance.
+	 * @param samples the encoded samples
+	 * @return the tree of the samples
+	 * @see sample.RunLengthSample
+	 */
+	public <T extends EncodedSample<T>> Tree clusterEncoded (List<T> samples) {
+		
+		//random access to the samples
+		List<T> encoded = new ArrayList<T>(samples);
+		int size = encoded.size();
+		SquareMatrix distanceMatrix = new SquareMatrix(size);
+		
+		for (int i=0;i<size;i++) {
+			distanceMatrix.setLabel(encoded.get(i).getLabel(), i);
+			//the distance being symmetric, each pair is compared once
+			for (int j=i+1;j<size;j++) {
+				try {
+					double d = encoded.get(i).calcDistance(encoded.get(j));
+					distanceMatrix.set(i, j, d);
+					distanceMatrix.set(j, i, d);
+				} catch (SampleException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		NeighborJoining NJCluster = new NeighborJoining(distanceMatrix);
+		NJCluster.cluster();
+		return NJCluster.getTree();
+	}
+	
+	/**
+	 * Clusters the samples from an already computed distance matrix, for instance one assembled by
+	 * the ShardedDistanceMatrixBuilder from shards computed by several worker processes.
+	 * @param distanceMatrix the pairwise distance matrix of the dataset
+	 * @see ShardedDistanceMatrixBuilder
+	 */
+	public void clusterData (SquareMatrix distanceMatrix) {
 		
 		//THen compute the clustering with the Neighbour Joining algorithm
 		NeighborJoining NJCluster = new NeighborJoining(distanceMatrix);
@@ -52,20 +200,27 @@ public class SampleClustering {
 	/**
 	 * This method computes a distance matrix where pairwise distances between two different sample are 
 	 * calculated. THis distance Matrix can be further processed by any clustering method based on distances.
+	 * @param dataset the samples to be compared
+	 * @param token checked before each row, may be null
 	 * @return a square distance matrix
 	 * @see SquareMatrix
 	 */
-	private SquareMatrix buildDistanceMatrix () {
+	private SquareMatrix buildDistanceMatrix (LinkedList<Sample> dataset, CancellationToken token) {
 		
-	SquareMatrix distanceMatrix  = new SquareMatrix(dataset.size());	
+	//random access to the samples
+	List<Sample> samples = new ArrayList<Sample>(dataset);
+	SquareMatrix distanceMatrix  = new SquareMatrix(samples.size());	
 	
-		for (int i=0;i<dataset.size();i++) {
+		for (int i=0;i<samples.size();i++) {
+			if (token != null) {
+				token.throwIfCancelled();
+			}
 			//Assign the name of a sample to its corresponding index in the matrix
-			distanceMatrix.setLabel(dataset.get(i).getLabel(),i);
-			for (int j=0;j<dataset.size();j++) {
+			distanceMatrix.setLabel(samples.get(i).getLabel(),i);
+			for (int j=0;j<samples.size();j++) {
 				if (i!=j) {
 					try {
-						distanceMatrix.set(i,j,dataset.get(i).calcDistance(dataset.get(j)));
+						distanceMatrix.set(i,j,distance.calcDistance(samples.get(i),samples.get(j)));
 					} catch (SampleException e) {
 						e.printStackTrace();
 					}
@@ -79,6 +234,33 @@ public class SampleClustering {
 		return distanceMatrix;
 	}
 
+	public SampleDistance getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Defines the measure used for the pairwise distances, comparing the samples position by position by default.
+	 * @param distance the distance measure
+	 * @see SignatureDistance
+	 * @see MaskedDistance
+	 */
+	public void setDistance(SampleDistance distance) {
+		this.distance = distance;
+	}
+
+	public boolean isCollapseDuplicates() {
+		return collapseDuplicates;
+	}
+
+	/**
+	 * Enables the collapsing of identical samples before the clustering. Duplicates are clustered only once
+	 * and reappear in the tree as zero-length siblings of their representative.
+	 * @param collapseDuplicates
+	 */
+	public void setCollapseDuplicates(boolean collapseDuplicates) {
+		this.collapseDuplicates = collapseDuplicates;
+	}
+
 	/**
 	 * Main method running an example of clustering on a dataset of four randomlt generated samples.
 	 * @param args
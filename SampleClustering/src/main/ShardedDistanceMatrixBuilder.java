@@ -0,0 +1,355 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import sample.PositionalDistance;
+import sample.Sample;
+import sample.SampleDistance;
+import util.SquareMatrix;
+
+/**
+ * This class computes the pairwise distance matrix of a dataset by splitting its upper triangle into square blocks
+ * (shards), each of them being computed in a separate worker process. Workers can run on the local machine or on
+ * remote hosts sharing the same filesystem, by defining the command prefixes used to launch them (e.g. "ssh host1").
+ * The dataset is serialized in the working directory along with the distance measure, so that the workers compare the
+ * samples with the same measure, and the shards computed with another measure are not reused.
+ * Each worker writes its shard in the working directory, and the merge step assembles them into a distance matrix
+ * that can be clustered by the NeighborJoining method. Missing or corrupted shards are launched again, as well as the
+ * shards whose worker exceeded the time limit and was killed, while valid shards left in the working directory by
+ * a previous run on the same dataset are reused.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see DistanceShard
+ */
+public class ShardedDistanceMatrixBuilder {
+
+	//the name of the serialized dataset and distance measure in the working directory
+	private static final String DATASET_FILE = "dataset.ser";
+
+	//the directory, shared by all the workers, holding the dataset and the shards
+	private File workDir;
+
+	//the number of rows and columns of a shard
+	private int blockSize;
+
+	//the maximum number of workers running at the same time
+	private int maxWorkers;
+
+	//the number of times a failed shard is launched again
+	private int maxRetries = 3;
+
+	//the time after which a worker is killed, in milliseconds
+	private long workerTimeout = TimeUnit.HOURS.toMillis(1);
+
+	//the command prefixes used to launch the workers, used in turn for each shard
+	private List<List<String>> launchers;
+
+	//the measure used for the pairwise distances
+	private SampleDistance distance = new PositionalDistance();
+
+	/**
+	 * Constructor. Workers are launched on the local machine by default.
+	 * @param workDir the working directory, which must be visible to all the workers
+	 * @param blockSize the number of rows and columns of a shard
+	 * @param maxWorkers the maximum number of workers running at the same time
+	 */
+	public ShardedDistanceMatrixBuilder(File workDir, int blockSize, int maxWorkers) {
+		if (blockSize < 1 || maxWorkers < 1) {
+			throw new IllegalArgumentException("The block size and the number of workers should be positive.");
+		}
+		this.workDir = workDir;
+		this.blockSize = blockSize;
+		this.maxWorkers = maxWorkers;
+		this.launchers = new ArrayList<List<String>>();
+		this.launchers.add(new ArrayList<String>());
+	}
+
+	/**
+	 * Defines the command prefixes used to launch the workers, for instance {"ssh", "host1"}. Shards are distributed
+	 * in turn over the launchers. An empty prefix launches the worker on the local machine.
+	 * @param prefixes one command prefix per launcher
+	 */
+	public void setLaunchers(List<List<String>> prefixes) {
+		if (prefixes.isEmpty()) {
+			throw new IllegalArgumentException("At least one launcher is required.");
+		}
+		this.launchers = prefixes;
+	}
+
+	public SampleDistance getDistance() {
+		return distance;
+	}
+
+	/**
+	 * Defines the measure used by the workers for the pairwise distances, comparing the samples position by position
+	 * by default. The measure is serialized along with the dataset.
+	 * @param distance the distance measure
+	 */
+	public void setDistance(SampleDistance distance) {
+		this.distance = distance;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	public void setMaxRetries(int maxRetries) {
+		this.maxRetries = maxRetries;
+	}
+
+	/**
+	 * @return the time after which a worker is killed, in milliseconds
+	 */
+	public long getWorkerTimeout() {
+		return workerTimeout;
+	}
+
+	/**
+	 * Defines the time after which a worker still running is killed, its shard being launched again. A worker launched
+	 * through a remote command prefix is killed by killing the local command, which may leave the remote process running
+	 * depending on the command.
+	 * @param timeout the time limit of a worker, one hour by default
+	 * @param unit the unit of the time limit
+	 */
+	public void setWorkerTimeout(long timeout, TimeUnit unit) {
+		if (timeout <= 0) {
+			throw new IllegalArgumentException("The time limit of the workers should be positive.");
+		}
+		this.workerTimeout = unit.toMillis(timeout);
+	}
+
+	/**
+	 * Computes the distance matrix of the dataset. Shards already present in the working directory (e.g. from a
+	 * previous interrupted run, or computed by workers launched by other means) are reused as long as they are valid.
+	 * @param dataset the samples to be compared
+	 * @return the square distance matrix
+	 * @throws IOException if some shards are still missing after all the retries
+	 * @throws InterruptedException
+	 */
+	public SquareMatrix build(LinkedList<Sample> dataset) throws IOException, InterruptedException {
+
+		if (!workDir.isDirectory() && !workDir.mkdirs()) {
+			throw new IOException("Error: unable to create the working directory "+workDir);
+		}
+		File datasetFile = new File(workDir, DATASET_FILE);
+		writeDataset(dataset, distance, datasetFile);
+		long datasetId = checksum(datasetFile);
+
+		List<DistanceShard> pending = this.missingShards(this.planShards(dataset.size(), datasetId));
+
+		for (int attempt=0;attempt<=maxRetries && !pending.isEmpty();attempt++) {
+			this.runWorkers(pending, datasetFile);
+			pending = this.missingShards(pending);
+		}
+
+		if (!pending.isEmpty()) {
+			throw new IOException("Error: "+pending.size()+" shards could not be computed: "+pending);
+		}
+
+		return this.merge(dataset, datasetId);
+	}
+
+	/**
+	 * Assembles the shards found in the working directory into a distance matrix.
+	 * @param dataset the samples, used for the size and the labels of the matrix
+	 * @param datasetId the checksum of the serialized dataset the shards have been computed from
+	 * @return the square distance matrix
+	 * @throws IOException if a shard is missing, corrupted or computed from another dataset
+	 */
+	public SquareMatrix merge(LinkedList<Sample> dataset, long datasetId) throws IOException {
+
+		SquareMatrix distanceMatrix = new SquareMatrix(dataset.size());
+
+		int i = 0;
+		for (Sample sp:dataset) {
+			distanceMatrix.setLabel(sp.getLabel(), i++);
+		}
+		for (DistanceShard block:this.planShards(dataset.size(), datasetId)) {
+			DistanceShard shard = DistanceShard.read(new File(workDir, block.getFileName()));
+			if (!shard.hasSameBlock(block)) {
+				throw new IOException("Error: unexpected content for "+block);
+			}
+			shard.copyInto(distanceMatrix);
+		}
+		//distance is 0 when a sample is compared to itself
+		for (i=0;i<dataset.size();i++) {
+			distanceMatrix.set(i, i, 0);
+		}
+		return distanceMatrix;
+	}
+
+	/**
+	 * Splits the upper triangle of the matrix into square blocks.
+	 * @param size the number of samples
+	 * @param datasetId the checksum of the serialized dataset
+	 * @return the list of empty shards
+	 */
+	private List<DistanceShard> planShards(int size, long datasetId) {
+		List<DistanceShard> shards = new ArrayList<DistanceShard>();
+		for (int rowStart=0;rowStart<size;rowStart+=blockSize) {
+			for (int colStart=rowStart;colStart<size;colStart+=blockSize) {
+				DistanceShard block = new DistanceShard(rowStart, Math.min(rowStart+blockSize, size),
+						colStart, Math.min(colStart+blockSize, size));
+				block.setDatasetId(datasetId);
+				shards.add(block);
+			}
+		}
+		return shards;
+	}
+
+	/**
+	 * @param shards the expected shards
+	 * @return the shards whose file is missing, truncated, corrupted or does not match the expected block
+	 */
+	private List<DistanceShard> missingShards(List<DistanceShard> shards) {
+		List<DistanceShard> missing = new ArrayList<DistanceShard>();
+		for (DistanceShard block:shards) {
+			File file = new File(workDir, block.getFileName());
+			try {
+				if (!file.exists() || !DistanceShard.read(file).hasSameBlock(block)) {
+					missing.add(block);
+				}
+			} catch (IOException e) {
+				System.err.println(e.getMessage());
+				missing.add(block);
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Launches one worker process per shard, with at most maxWorkers processes running at the same time,
+	 * and waits for all of them to terminate. The workers exceeding the time limit are killed.
+	 * @param shards the shards to be computed
+	 * @param datasetFile the serialized dataset
+	 * @throws InterruptedException
+	 */
+	private void runWorkers(List<DistanceShard> shards, final File datasetFile) throws InterruptedException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(maxWorkers);
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+
+		for (int s=0;s<shards.size();s++) {
+			final DistanceShard block = shards.get(s);
+			final List<String> command = new ArrayList<String>(launchers.get(s % launchers.size()));
+			command.addAll(Arrays.asList(
+					new File(new File(System.getProperty("java.home"), "bin"), "java").getPath(),
+					"-cp", System.getProperty("java.class.path"),
+					DistanceShard.class.getName(),
+					datasetFile.getAbsolutePath(), workDir.getAbsolutePath(),
+					String.valueOf(block.getRowStart()), String.valueOf(block.getRowEnd()),
+					String.valueOf(block.getColStart()), String.valueOf(block.getColEnd())));
+
+			tasks.add(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					Process worker = new ProcessBuilder(command).inheritIO().start();
+					try {
+						if (!worker.waitFor(workerTimeout, TimeUnit.MILLISECONDS)) {
+							//the shard file is only renamed once complete, so the shard is found missing and launched again
+							System.err.println("Worker for "+block+" killed after "+workerTimeout+" ms");
+							return -1;
+						}
+					} finally {
+						if (worker.isAlive()) {
+							worker.destroyForcibly();
+						}
+					}
+					int status = worker.exitValue();
+					if (status != 0) {
+						System.err.println("Worker for "+block+" exited with status "+status);
+					}
+					return status;
+				}
+			});
+		}
+
+		try {
+			//failures are detected afterwards by checking the shard files
+			executor.invokeAll(tasks);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Serializes a dataset in a file, followed by the distance measure, so that they can be read by the workers.
+	 * @param dataset the samples
+	 * @param distance the measure used for the pairwise distances
+	 * @param file the destination file
+	 * @throws IOException
+	 */
+	public static void writeDataset(LinkedList<Sample> dataset, SampleDistance distance, File file) throws IOException {
+		try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+			out.writeObject(dataset);
+			out.writeObject(distance);
+		}
+	}
+
+	/**
+	 * Computes the checksum of a file, used to identify the dataset the shards have been computed from.
+	 * @param file the file
+	 * @return its CRC32 checksum
+	 * @throws IOException
+	 */
+	public static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = new FileInputStream(file)) {
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				crc.update(buffer, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Reads a dataset serialized with the writeDataset method.
+	 * @param file the dataset file
+	 * @return the samples
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public static LinkedList<Sample> readDataset(File file) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			return (LinkedList<Sample>) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Error: unable to read the dataset "+file, e);
+		}
+	}
+
+	/**
+	 * Reads the distance measure serialized after the dataset with the writeDataset method.
+	 * @param file the dataset file
+	 * @return the distance measure
+	 * @throws IOException
+	 */
+	public static SampleDistance readDistance(File file) throws IOException {
+		try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			//the dataset comes first
+			in.readObject();
+			return (SampleDistance) in.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Error: unable to read the distance measure of "+file, e);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package sample;
+
+/**
+ * The distance between two HSV colors, as defined by SampleElementColor.calcDistance, in several variants working on
+ * primitive values. Every variant keeps the semantics of the original method: the differences of the Saturations and
+ * the Values are computed in float before being promoted to double, the hue difference is 1 as soon as the two hues
+ * differ (h2-h1 != 0 in float), and the hue is ignored when one of the saturations is zero.
+ * <ul>
+ * <li>reference: the original computation, squares being computed by Math.pow;</li>
+ * <li>fused: the squares are plain products and the hue term is selected without a separate branch. The square of a
+ * float promoted to double is exact (48 significant bits at most), so the result is identical to the reference;</li>
+ * <li>squared: the squared distance, without the square root, for comparisons where only the order of the distances
+ * matters. Its square root is exactly the fused distance.</li>
+ * </ul>
+ * The equivalence of the variants is checked over randomized inputs by ColorDistanceOracle.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see SampleElementColor#calcDistance(SampleElementColor)
+ * @see ColorDistanceOracle
+ */
+public final class ColorDistanceKernels {
+
+	private ColorDistanceKernels() {
+
+	}
+
+	/**
+	 * The original computation of SampleElementColor.calcDistance, kept as the reference of the other variants.
+	 * @return the distance between the color (h1,s1,v1) and the other color (h2,s2,v2)
+	 */
+	public static double reference(float h1, float s1, float v1, float h2, float s2, float v2) {
+		double distance = 0.0, hDistance = 0.0, sDistance =0.0, vDistance = 0.0;
+
+		//when hues are different, consider the hDistance as 1
+		if (h2-h1 != 0.0) {
+			hDistance = 1;
+		}
+
+		sDistance = s2-s1;
+		vDistance = v2-v1;
+
+		//do not consider the hue when the saturation is zero
+		if (s1 == 0 || s2 == 0) {
+			distance = Math.sqrt(Math.pow(sDistance,2)+Math.pow(vDistance,2));
+		}else {
+			distance = Math.sqrt(Math.pow(hDistance,2)+Math.pow(sDistance,2)+Math.pow(vDistance,2));
+		}
+		return distance;
+	}
+
+	/**
+	 * The distance computed with plain products, identical to the reference.
+	 * @return the distance between the color (h1,s1,v1) and the other color (h2,s2,v2)
+	 */
+	public static double fused(float h1, float s1, float v1, float h2, float s2, float v2) {
+		return Math.sqrt(squared(h1, s1, v1, h2, s2, v2));
+	}
+
+	/**
+	 * The squared distance, which orders the pairs of colors as the distance does.
+	 * @return the square of the distance between the color (h1,s1,v1) and the other color (h2,s2,v2), before rounding
+	 * of the square root
+	 */
+	public static double squared(float h1, float s1, float v1, float h2, float s2, float v2) {
+		double sDistance = s2-s1;
+		double vDistance = v2-v1;
+		//0+x being exactly x, the sums are the ones of the reference in both cases
+		double hSquared = (s1 != 0 && s2 != 0 && h2-h1 != 0.0) ? 1 : 0;
+		return hSquared+sDistance*sDistance+vDistance*vDistance;
+	}
+}
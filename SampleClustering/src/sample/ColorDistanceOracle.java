@@ -0,0 +1,146 @@
+package sample;
+
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * Checks the variants of ColorDistanceKernels against the reference over randomized HSV colors. The colors mix uniform
+ * values, the boundaries of the HSV ranges, zero saturations, identical or nearly identical hues (one ulp apart), and
+ * colors converted from random RGB values as the samples are. The checked properties are:
+ * <ul>
+ * <li>the fused distance is bitwise identical to the reference;</li>
+ * <li>the square root of the squared distance is bitwise identical to the reference, so that both variants order
+ * the distances in the same way;</li>
+ * <li>the distance is symmetric;</li>
+ * <li>SampleElementColor.calcDistance gives the reference distance.</li>
+ * </ul>
+ * The first counterexample of each property is printed, and the process exits with status 1 if any property fails.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see ColorDistanceKernels
+ */
+public class ColorDistanceOracle {
+
+	//remarkable values of the HSV channels
+	private static final float[] EDGES = {0f, Float.MIN_VALUE, Math.nextUp(0f), 0.5f, Math.nextDown(1f), 1f};
+
+	//the checked properties
+	private static final String[] PROPERTIES = {"fused == reference", "sqrt(squared) == reference", "symmetry", "SampleElementColor == reference"};
+
+	private Random random;
+
+	//the number of failures of each property
+	private long[] failures = new long[PROPERTIES.length];
+
+	public ColorDistanceOracle(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @return a random HSV color, as an array {h,s,v}
+	 */
+	private float[] randomColor() {
+		switch (random.nextInt(4)) {
+		case 0:
+			return new float[] {random.nextFloat(), random.nextFloat(), random.nextFloat()};
+		case 1:
+			return new float[] {edge(), edge(), edge()};
+		case 2:
+			//achromatic colors
+			return new float[] {random.nextFloat(), 0f, random.nextFloat()};
+		default:
+			float[] hsv = new float[3];
+			Color.RGBtoHSB(random.nextInt(256), random.nextInt(256), random.nextInt(256), hsv);
+			return hsv;
+		}
+	}
+
+	private float edge() {
+		return random.nextBoolean() ? EDGES[random.nextInt(EDGES.length)] : random.nextFloat();
+	}
+
+	/**
+	 * @return a color related to another one: same hue, hue one ulp apart, same color, or unrelated
+	 */
+	private float[] relatedColor(float[] c) {
+		float[] other = this.randomColor();
+		switch (random.nextInt(4)) {
+		case 0:
+			other[0] = c[0];
+			break;
+		case 1:
+			other[0] = random.nextBoolean() ? Math.nextUp(c[0]) : Math.nextDown(c[0]);
+			break;
+		case 2:
+			other = c.clone();
+			break;
+		default:
+			break;
+		}
+		return other;
+	}
+
+	/**
+	 * Checks the properties on a number of random pairs of colors.
+	 * @param cases the number of pairs
+	 * @return true if all the properties hold
+	 */
+	public boolean run(long cases) {
+
+		SampleElementColor e1 = new SampleElementColor(), e2 = new SampleElementColor();
+
+		for (long n=0;n<cases;n++) {
+			float[] c1 = this.randomColor();
+			float[] c2 = this.relatedColor(c1);
+
+			double reference = ColorDistanceKernels.reference(c1[0], c1[1], c1[2], c2[0], c2[1], c2[2]);
+			double fused = ColorDistanceKernels.fused(c1[0], c1[1], c1[2], c2[0], c2[1], c2[2]);
+			double squared = ColorDistanceKernels.squared(c1[0], c1[1], c1[2], c2[0], c2[1], c2[2]);
+			double reversed = ColorDistanceKernels.reference(c2[0], c2[1], c2[2], c1[0], c1[1], c1[2]);
+
+			e1.setH(c1[0]);
+			e1.setS(c1[1]);
+			e1.setV(c1[2]);
+			e2.setH(c2[0]);
+			e2.setS(c2[1]);
+			e2.setV(c2[2]);
+			double element = e1.calcDistance(e2);
+
+			this.check(0, reference, fused, c1, c2);
+			this.check(1, reference, Math.sqrt(squared), c1, c2);
+			this.check(2, reference, reversed, c1, c2);
+			this.check(3, reference, element, c1, c2);
+		}
+
+		boolean success = true;
+		for (int p=0;p<PROPERTIES.length;p++) {
+			System.out.println(PROPERTIES[p]+": "+(failures[p] == 0 ? "ok" : failures[p]+" failures")+" over "+cases+" cases");
+			success &= failures[p] == 0;
+		}
+		return success;
+	}
+
+	private void check(int property, double expected, double actual, float[] c1, float[] c2) {
+		if (Double.doubleToLongBits(expected) != Double.doubleToLongBits(actual)) {
+			if (failures[property]++ == 0) {
+				System.out.println(PROPERTIES[property]+" fails for HSV "+c1[0]+","+c1[1]+","+c1[2]+" and "+c2[0]+","+c2[1]+","+c2[2]
+						+": "+actual+" instead of "+expected);
+			}
+		}
+	}
+
+	/**
+	 * Runs the oracle.
+	 * @param args the number of cases (10 millions by default) and the seed of the random generator
+	 */
+	public static void main(String[] args) {
+		long cases = args.length > 0 ? Long.parseLong(args[0]) : 10000000L;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+		System.out.println("seed "+seed);
+
+		if (!new ColorDistanceOracle(seed).run(cases)) {
+			System.exit(1);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+package sample;
+
+/**
+ * A fixed-size summary of the color composition of a sample, regardless of the position of its elements.
+ * The elements are counted in a joint histogram of the three channels of the color model, along with the
+ * histogram of each channel taken separately. Histograms are normalized so that comparing two signatures
+ * has a cost that only depends on the number of bins, and not on the length of the samples.
+ * In the HSV model, the elements without saturation are counted in an additional hue bin, since their hue is
+ * meaningless (which is consistent with SampleElementColor.calcDistance).
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see SignatureDistance
+ */
+public class ColorSignature {
+
+	//the color model of the summarized sample
+	private ColorSpace colorSpace;
+
+	//the number of bins of each channel
+	private int bins0;
+	private int bins1;
+	private int bins2;
+
+	//the normalized joint histogram
+	private float[] histogram;
+
+	//the normalized histograms of each channel
+	private float[] marginal0;
+	private float[] marginal1;
+	private float[] marginal2;
+
+	/**
+	 * Constructor. Allocates empty histograms.
+	 */
+	private ColorSignature(ColorSpace colorSpace, int bins0, int bins1, int bins2) {
+		if (bins0 < 1 || bins1 < 1 || bins2 < 1) {
+			throw new IllegalArgumentException("The number of bins should be positive.");
+		}
+		this.colorSpace = colorSpace;
+		this.bins0 = bins0;
+		this.bins1 = bins1;
+		this.bins2 = bins2;
+
+		//one more hue bin for the achromatic colors
+		int hueBins = colorSpace == ColorSpace.HSV ? bins0+1 : bins0;
+		this.histogram = new float[hueBins*bins1*bins2];
+		this.marginal0 = new float[hueBins];
+		this.marginal1 = new float[bins1];
+		this.marginal2 = new float[bins2];
+	}
+
+	/**
+	 * Computes the signature of a sample.
+	 * @param sp the sample
+	 * @param hBins the number of bins for the Hue
+	 * @param sBins the number of bins for the Saturation
+	 * @param vBins the number of bins for the Value
+	 * @return the HSV signature of the sample
+	 */
+	public static ColorSignature of(Sample sp, int hBins, int sBins, int vBins) {
+		ColorSignature signature = new ColorSignature(ColorSpace.HSV, hBins, sBins, vBins);
+		for (SampleElementColor se:sp) {
+			signature.add(se.getH(), se.getS(), se.getV());
+		}
+		signature.normalize(sp.size());
+		return signature;
+	}
+
+	/**
+	 * Computes the signature of a primitive sample, in its own color model.
+	 * @param sp the sample
+	 * @param bins0 the number of bins for the first channel (Hue or L)
+	 * @param bins1 the number of bins for the second channel (Saturation or a)
+	 * @param bins2 the number of bins for the third channel (Value or b)
+	 * @return the signature of the sample
+	 */
+	public static ColorSignature of(PrimitiveSample sp, int bins0, int bins1, int bins2) {
+		ColorSignature signature = new ColorSignature(sp.getColorSpace(), bins0, bins1, bins2);
+		float[] c0 = sp.getChannel0(), c1 = sp.getChannel1(), c2 = sp.getChannel2();
+		for (int i=0;i<sp.length();i++) {
+			signature.add(c0[i], c1[i], c2[i]);
+		}
+		signature.normalize(sp.length());
+		return signature;
+	}
+
+	/**
+	 * Counts an element in the histograms.
+	 */
+	private void add(float c0, float c1, float c2) {
+		int b0, b1, b2;
+		if (colorSpace == ColorSpace.HSV) {
+			b0 = c1 == 0 ? bins0 : bin(c0, 0, 1, bins0);
+			b1 = bin(c1, 0, 1, bins1);
+			b2 = bin(c2, 0, 1, bins2);
+		}else {
+			//ranges of the values returned by ColorUtil.rgb2lab
+			b0 = bin(c0, 0, 256, bins0);
+			b1 = bin(c1, -128, 128, bins1);
+			b2 = bin(c2, -128, 128, bins2);
+		}
+		histogram[(b0*bins1+b1)*bins2+b2]++;
+		marginal0[b0]++;
+		marginal1[b1]++;
+		marginal2[b2]++;
+	}
+
+	/**
+	 * @return the bin of a value, values out of the range falling in the first or the last bin
+	 */
+	private static int bin(float value, float min, float max, int bins) {
+		int b = (int) ((value-min)/(max-min)*bins);
+		return b < 0 ? 0 : (b >= bins ? bins-1 : b);
+	}
+
+	/**
+	 * Divides the counts by the number of elements.
+	 */
+	private void normalize(int count) {
+		if (count > 0) {
+			float[][] all = {histogram, marginal0, marginal1, marginal2};
+			for (float[] h:all) {
+				for (int i=0;i<h.length;i++) {
+					h[i] /= count;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The histogram intersection distance, i.e. one minus the proportion of elements shared by the two signatures.
+	 * @param other the other signature
+	 * @return a distance comprised between 0 and 1
+	 * @throws SampleException if the two signatures are not comparable
+	 */
+	public double intersectionDistance(ColorSignature other) throws SampleException {
+		this.checkComparable(other);
+		double intersection = 0;
+		for (int i=0;i<histogram.length;i++) {
+			intersection += Math.min(histogram[i], other.histogram[i]);
+		}
+		//the normalized histograms may sum slightly above 1 because of rounding
+		return Math.max(0, 1-intersection);
+	}
+
+	/**
+	 * The chi-square distance between the two joint histograms.
+	 * @param other the other signature
+	 * @return a distance comprised between 0 and 1
+	 * @throws SampleException if the two signatures are not comparable
+	 */
+	public double chiSquareDistance(ColorSignature other) throws SampleException {
+		this.checkComparable(other);
+		double distance = 0;
+		for (int i=0;i<histogram.length;i++) {
+			double sum = histogram[i]+other.histogram[i];
+			if (sum > 0) {
+				double diff = histogram[i]-other.histogram[i];
+				distance += diff*diff/sum;
+			}
+		}
+		return distance/2;
+	}
+
+	/**
+	 * The Earth Mover's Distance, computed on the histogram of each channel taken separately, where it reduces to
+	 * the difference between the cumulative histograms. The three distances are scaled to [0,1] and averaged.
+	 * The hue being circular, its distance is an approximation (the achromatic bin being placed after the last hue).
+	 * @param other the other signature
+	 * @return a distance comprised between 0 and 1
+	 * @throws SampleException if the two signatures are not comparable
+	 */
+	public double emdDistance(ColorSignature other) throws SampleException {
+		this.checkComparable(other);
+		return (emd(marginal0, other.marginal0)+emd(marginal1, other.marginal1)+emd(marginal2, other.marginal2))/3;
+	}
+
+	/**
+	 * @return the 1-D Earth Mover's Distance between two normalized histograms, scaled to [0,1]
+	 */
+	private static double emd(float[] h1, float[] h2) {
+		if (h1.length < 2) {
+			return 0;
+		}
+		double cumulated = 0, distance = 0;
+		for (int i=0;i<h1.length-1;i++) {
+			cumulated += h1[i]-h2[i];
+			distance += Math.abs(cumulated);
+		}
+		return distance/(h1.length-1);
+	}
+
+	/**
+	 * @throws SampleException if the two signatures have different color models or bins
+	 */
+	private void checkComparable(ColorSignature other) throws SampleException {
+		if (!other.hasBinning(colorSpace, bins0, bins1, bins2)) {
+			throw new SampleException("Error: The two signatures should have the same color model and bins.");
+		}
+	}
+
+	/**
+	 * @return true if the signature has been computed with the given color model and bins
+	 */
+	public boolean hasBinning(ColorSpace colorSpace, int bins0, int bins1, int bins2) {
+		return this.colorSpace == colorSpace && this.bins0 == bins0 && this.bins1 == bins1 && this.bins2 == bins2;
+	}
+
+	public ColorSpace getColorSpace() {
+		return colorSpace;
+	}
+
+	/**
+	 * @return the normalized joint histogram
+	 */
+	public float[] getHistogram() {
+		return histogram;
+	}
+}
@@ -0,0 +1,21 @@
+package sample;
+
+/**
+ * The color models in which the elements of a sample can be encoded.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ *
+ */
+public enum ColorSpace {
+	
+	/**
+	 * Hue, Saturation and Value, all comprised between 0 and 1. Elements are compared as SampleElementColor objects.
+	 */
+	HSV,
+	
+	/**
+	 * L*a*b as computed by ColorUtil.rgb2lab. Elements are compared with the CIE76 color difference.
+	 */
+	LAB
+}
@@ -22,6 +22,16 @@ public static int byteArrToInt(byte[] colorByteArr) {
 }
 
 public static int[] rgb2lab(Color col) {
+    int[] lab = new int[3];
+    rgb2lab(col.getRed(), col.getGreen(), col.getBlue(), lab, 0);
+    return lab;
+}
+
+/**
+ * Converts a RGB color to the L*a*b scale without any intermediate Color object.
+ * The three components are written in lab, starting at the given offset.
+ */
+public static void rgb2lab(int R, int G, int B, int[] lab, int offset) {
     //http://www.brucelindbloom.com
 
     float r, g, b, X, Y, Z, fx, fy, fz, xr, yr, zr;
@@ -34,9 +44,9 @@ public static int[] rgb2lab(Color col) {
     float Zr = 0.825211f;
 
     // RGB to XYZ
-    r = col.getRed() / 255.f; //R 0..1
-    g = col.getGreen() / 255.f; //G 0..1
-    b = col.getBlue() / 255.f; //B 0..1
+    r = R / 255.f; //R 0..1
+    g = G / 255.f; //G 0..1
+    b = B / 255.f; //B 0..1
 
     // assuming sRGB (D65)
     if (r <= 0.04045)
@@ -83,11 +93,43 @@ public static int[] rgb2lab(Color col) {
     as = 500 * (fx - fy);
     bs = 200 * (fy - fz);
 
-    int[] lab = new int[3];
-    lab[0] = (int) (2.55 * Ls + .5);
-    lab[1] = (int) (as + .5);
-    lab[2] = (int) (bs + .5);
-    return lab;
+    lab[offset] = (int) (2.55 * Ls + .5);
+    lab[offset + 1] = (int) (as + .5);
+    lab[offset + 2] = (int) (bs + .5);
+}
+
+/**
+ * Converts a RGB color to the HSV model, giving exactly the same values as Color.RGBtoHSB
+ * but without allocating any array. The three components are written in h, s and v at the given index.
+ */
+public static void rgb2hsv(int r, int g, int b, float[] h, float[] s, float[] v, int index) {
+    int cmax = (r > g) ? r : g;
+    if (b > cmax) cmax = b;
+    int cmin = (r < g) ? r : g;
+    if (b < cmin) cmin = b;
+
+    float hue;
+    float saturation = (cmax != 0) ? ((float) (cmax - cmin)) / ((float) cmax) : 0;
+
+    if (saturation == 0) {
+        hue = 0;
+    } else {
+        float redc = ((float) (cmax - r)) / ((float) (cmax - cmin));
+        float greenc = ((float) (cmax - g)) / ((float) (cmax - cmin));
+        float bluec = ((float) (cmax - b)) / ((float) (cmax - cmin));
+        if (r == cmax)
+            hue = bluec - greenc;
+        else if (g == cmax)
+            hue = 2.0f + redc - bluec;
+        else
+            hue = 4.0f + greenc - redc;
+        hue = hue / 6.0f;
+        if (hue < 0)
+            hue = hue + 1.0f;
+    }
+    h[index] = hue;
+    s[index] = saturation;
+    v[index] = ((float) cmax) / 255.0f;
 }
 
 /**
@@ -0,0 +1,232 @@
+package sample;
+
+import java.util.Arrays;
+
+/**
+ * A distance measure aligning the elements of two samples by dynamic time warping (DTW), so that samples of different
+ * lengths can be compared. The cost of matching two elements is SampleElementColor.calcDistance, and the cost of the
+ * best alignment is divided by the length of the longest sample: with a band of 0, two samples of the same length are
+ * aligned position by position and their distance is exactly the one given by Sample.calcDistance.
+ * The alignment is restricted to a Sakoe-Chiba band around the diagonal, widened when needed to the difference
+ * between the lengths of the samples. When a cap is given, the computation is abandoned as soon as the distance is
+ * known to exceed it: first with a lower bound computed from the envelopes of the Saturation and the Value of the
+ * second sample (LB_Keogh), then while filling the rows of the alignment.
+ * The elements and the rows of the alignment are held in primitive arrays reused by each thread.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see SampleElementColor#calcDistance(SampleElementColor)
+ */
+@SuppressWarnings("serial")
+public class DtwDistance implements SampleDistance {
+
+	//the maximal shift between two aligned elements
+	private int band;
+
+	//the distance above which the alignment is abandoned, all the longer distances being reported as the cap
+	private double cap;
+
+	//the arrays reused by each thread
+	private static final ThreadLocal<Buffers> BUFFERS = new ThreadLocal<Buffers>() {
+		@Override
+		protected Buffers initialValue() {
+			return new Buffers();
+		}
+	};
+
+	/**
+	 * Constructor for an alignment which is never abandoned.
+	 * @param band the maximal shift between two aligned elements
+	 */
+	public DtwDistance(int band) {
+		this(band, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Constructor.
+	 * @param band the maximal shift between two aligned elements
+	 * @param cap the distance above which the alignment is abandoned
+	 */
+	public DtwDistance(int band, double cap) {
+		if (band < 0 || !(cap >= 0)) {
+			throw new IllegalArgumentException("The band and the cap should not be negative.");
+		}
+		this.band = band;
+		this.cap = cap;
+	}
+
+	@Override
+	public double calcDistance(Sample sp1, Sample sp2) throws SampleException {
+
+		int n = sp1.size(), m = sp2.size();
+		if (n == 0 || m == 0) {
+			if (n == m) {
+				return 0;
+			}
+			throw new SampleException("Error: An empty sample cannot be aligned with another one.");
+		}
+
+		Buffers b = BUFFERS.get();
+		b.ensureCapacity(Math.max(n, m));
+		b.load(sp1, b.h1, b.s1, b.v1);
+		b.load(sp2, b.h2, b.s2, b.v2);
+
+		int w = Math.max(band, Math.abs(n-m));
+		int length = Math.max(n, m);
+		double threshold = cap*length;
+		boolean abandoning = threshold < Double.POSITIVE_INFINITY;
+
+		//lbTail[i] bounds the cost of aligning the elements i to n-1 of the first sample
+		if (abandoning) {
+			this.lowerBounds(b, n, m, w);
+			if (b.lbTail[0] > threshold) {
+				return cap;
+			}
+		}
+
+		//prev[j+1] and curr[j+1] hold the cost of the best alignment ending with the elements (i-1,j) and (i,j)
+		double[] prev = b.prev, curr = b.curr;
+		Arrays.fill(prev, 0, m+1, Double.POSITIVE_INFINITY);
+		prev[0] = 0;
+
+		for (int i=0;i<n;i++) {
+			int lo = Math.max(0, i-w), hi = Math.min(m-1, i+w);
+			float h = b.h1[i], s = b.s1[i], v = b.v1[i];
+
+			//the cells out of the band, read by the next row
+			curr[lo] = Double.POSITIVE_INFINITY;
+			if (hi+2 <= m) {
+				curr[hi+2] = Double.POSITIVE_INFINITY;
+			}
+
+			double rowMin = Double.POSITIVE_INFINITY;
+			for (int j=lo;j<=hi;j++) {
+				double best = Math.min(prev[j], Math.min(prev[j+1], curr[j]));
+				double d = best+ColorDistanceKernels.fused(h, s, v, b.h2[j], b.s2[j], b.v2[j]);
+				curr[j+1] = d;
+				if (d < rowMin) {
+					rowMin = d;
+				}
+			}
+
+			if (abandoning && rowMin+b.lbTail[i+1] > threshold) {
+				return cap;
+			}
+
+			double[] tmp = prev;
+			prev = curr;
+			curr = tmp;
+		}
+
+		double distance = prev[m]/length;
+		return distance > cap ? cap : distance;
+	}
+
+	/**
+	 * Computes the lower bounds of the cost of aligning each element of the first sample: any element of the second
+	 * sample within the band differs at least by the distance to the envelope of their Saturations and Values.
+	 * The bounds are summed from the last element in lbTail.
+	 */
+	private void lowerBounds(Buffers b, int n, int m, int w) {
+
+		envelope(b.s2, n, m, w, b.lowerS, b.upperS, b.queue);
+		envelope(b.v2, n, m, w, b.lowerV, b.upperV, b.queue);
+
+		b.lbTail[n] = 0;
+		for (int i=n-1;i>=0;i--) {
+			float gapS = gap(b.s1[i], b.lowerS[i], b.upperS[i]);
+			float gapV = gap(b.v1[i], b.lowerV[i], b.upperV[i]);
+			b.lbTail[i] = b.lbTail[i+1]+Math.sqrt((double) gapS*gapS+(double) gapV*gapV);
+		}
+	}
+
+	/**
+	 * Computes the minimum and the maximum of the values within the band of each of the n rows, in O(n+m) by keeping
+	 * the indexes of the candidate extrema in a monotonic queue.
+	 */
+	private static void envelope(float[] values, int n, int m, int w, float[] lower, float[] upper, int[] queue) {
+
+		for (int pass=0;pass<2;pass++) {
+			boolean min = pass == 0;
+			float[] extremum = min ? lower : upper;
+			int head = 0, tail = 0, next = 0;
+
+			for (int i=0;i<n;i++) {
+				//enter the values reaching the band, dropping the ones which can no longer be extrema
+				for (int hi=Math.min(m-1, i+w);next<=hi;next++) {
+					while (tail > head && (min ? values[queue[tail-1]] >= values[next] : values[queue[tail-1]] <= values[next])) {
+						tail--;
+					}
+					queue[tail++] = next;
+				}
+				//leave the values which went out of the band
+				while (queue[head] < i-w) {
+					head++;
+				}
+				extremum[i] = values[queue[head]];
+			}
+		}
+	}
+
+	/**
+	 * @return the distance between a value and the interval [lower, upper], computed in float as in the elements
+	 */
+	private static float gap(float value, float lower, float upper) {
+		if (value < lower) {
+			return lower-value;
+		}
+		if (value > upper) {
+			return value-upper;
+		}
+		return 0;
+	}
+
+	public int getBand() {
+		return band;
+	}
+
+	public double getCap() {
+		return cap;
+	}
+
+	/**
+	 * The arrays used by a thread, enlarged when longer samples arrive.
+	 */
+	private static class Buffers {
+		private int capacity;
+		private float[] h1, s1, v1, h2, s2, v2;
+		private float[] lowerS, upperS, lowerV, upperV;
+		private double[] prev, curr, lbTail;
+		private int[] queue;
+
+		private void ensureCapacity(int length) {
+			if (length > capacity) {
+				capacity = Math.max(length, 2*capacity);
+				h1 = new float[capacity];
+				s1 = new float[capacity];
+				v1 = new float[capacity];
+				h2 = new float[capacity];
+				s2 = new float[capacity];
+				v2 = new float[capacity];
+				prev = new double[capacity+1];
+				curr = new double[capacity+1];
+				lbTail = new double[capacity+1];
+				lowerS = new float[capacity];
+				upperS = new float[capacity];
+				lowerV = new float[capacity];
+				upperV = new float[capacity];
+				queue = new int[capacity];
+			}
+		}
+
+		private void load(Sample sp, float[] h, float[] s, float[] v) {
+			int i = 0;
+			for (SampleElementColor se:sp) {
+				h[i] = se.getH();
+				s[i] = se.getS();
+				v[i] = se.getV();
+				i++;
+			}
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package sample;
+
+/**
+ * A compact representation of a sample, which can be clustered directly without being converted back into a Sample
+ * made of SampleElementColor objects.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ * @see main.SampleClustering#clusterEncoded(java.util.List)
+ */
+public interface EncodedSample<T extends EncodedSample<T>> {
+
+	/**
+	 * @return the name of the sample
+	 */
+	public String getLabel();
+
+	/**
+	 * Calculates the distance between the current sample and another one of the same representation.
+	 * @param other the other sample
+	 * @return the distance between the two samples
+	 * @throws SampleException if the samples cannot be compared
+	 */
+	public double calcDistance(T other) throws SampleException;
+}
@@ -0,0 +1,221 @@
+package sample;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+/**
+ * This class turns images into samples. Each image is divided into a grid of identical regions, and the average
+ * color of each region becomes an element of the sample, the regions being read row by row.
+ * Pixels are read directly from the raster of the image, one row at a time, and the colors of all the regions are
+ * converted in bulk into primitive arrays. Several images are processed in parallel. The samples are clustered as they
+ * are by SampleClustering.clusterEncoded.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see PrimitiveSample
+ */
+public class ImageSampleReader {
+
+	//the number of rows and columns of the grid
+	private int gridRows;
+	private int gridCols;
+
+	//the color model of the produced samples
+	private ColorSpace colorSpace;
+
+	//the number of images processed at the same time
+	private int threads;
+
+	/**
+	 * Constructor.
+	 * @param gridRows the number of rows of the grid
+	 * @param gridCols the number of columns of the grid
+	 * @param colorSpace the color model of the produced samples
+	 * @param threads the number of images processed at the same time
+	 */
+	public ImageSampleReader(int gridRows, int gridCols, ColorSpace colorSpace, int threads) {
+		if (gridRows < 1 || gridCols < 1 || threads < 1) {
+			throw new IllegalArgumentException("The grid dimensions and the number of threads should be positive.");
+		}
+		this.gridRows = gridRows;
+		this.gridCols = gridCols;
+		this.colorSpace = colorSpace;
+		this.threads = threads;
+	}
+
+	/**
+	 * Reads several images in parallel.
+	 * @param files the image files
+	 * @return one sample per image, in the same order, labelled with the name of the file
+	 * @throws IOException if an image cannot be read
+	 * @throws SampleException if an image is smaller than the grid
+	 * @throws InterruptedException
+	 */
+	public List<PrimitiveSample> readAll(List<File> files) throws IOException, SampleException, InterruptedException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+
+		try {
+			List<Future<PrimitiveSample>> futures = new ArrayList<Future<PrimitiveSample>>();
+			for (final File file:files) {
+				futures.add(executor.submit(new Callable<PrimitiveSample>() {
+					@Override
+					public PrimitiveSample call() throws Exception {
+						return read(file);
+					}
+				}));
+			}
+
+			List<PrimitiveSample> samples = new ArrayList<PrimitiveSample>(files.size());
+			for (Future<PrimitiveSample> future:futures) {
+				try {
+					samples.add(future.get());
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException) e.getCause();
+					}
+					if (e.getCause() instanceof SampleException) {
+						throw (SampleException) e.getCause();
+					}
+					throw new SampleException(e.getCause());
+				}
+			}
+			return samples;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Reads a single image.
+	 * @param file the image file
+	 * @return the sample, labelled with the name of the file
+	 * @throws IOException if the image cannot be read
+	 * @throws SampleException if the image is smaller than the grid
+	 */
+	public PrimitiveSample read(File file) throws IOException, SampleException {
+		BufferedImage image = ImageIO.read(file);
+		if (image == null) {
+			throw new IOException("Error: unsupported image format for "+file);
+		}
+		return this.toSample(image, file.getName());
+	}
+
+	/**
+	 * Converts an image into a sample.
+	 * @param image the image
+	 * @param label the name of the sample
+	 * @return the sample
+	 * @throws SampleException if the image is smaller than the grid
+	 */
+	public PrimitiveSample toSample(BufferedImage image, String label) throws SampleException {
+
+		int width = image.getWidth();
+		int height = image.getHeight();
+		if (width < gridCols || height < gridRows) {
+			throw new SampleException("Error: the image "+label+" is smaller than the grid.");
+		}
+
+		Raster raster = toRgbImage(image).getRaster();
+		int bands = raster.getNumBands();
+
+		//the sums of the red, green and blue channels of each region
+		long[] sums = new long[gridRows*gridCols*3];
+		int[] pixels = new int[width*bands];
+
+		//the column of the grid for each column of the image
+		int[] regionCols = new int[width];
+		for (int gc=0;gc<gridCols;gc++) {
+			for (int x=gc*width/gridCols;x<(gc+1)*width/gridCols;x++) {
+				regionCols[x] = gc;
+			}
+		}
+
+		for (int gr=0;gr<gridRows;gr++) {
+			int rowOffset = gr*gridCols;
+			for (int y=gr*height/gridRows;y<(gr+1)*height/gridRows;y++) {
+				raster.getPixels(0, y, width, 1, pixels);
+				for (int x=0, p=0;x<width;x++, p+=bands) {
+					int r = 3*(rowOffset+regionCols[x]);
+					sums[r] += pixels[p];
+					sums[r+1] += pixels[p+1];
+					sums[r+2] += pixels[p+2];
+				}
+			}
+		}
+
+		PrimitiveSample sp = new PrimitiveSample(label, colorSpace, gridRows*gridCols);
+		int[] lab = new int[3];
+
+		for (int gr=0, e=0;gr<gridRows;gr++) {
+			long regionHeight = (gr+1)*height/gridRows-gr*height/gridRows;
+			for (int gc=0;gc<gridCols;gc++, e++) {
+				long count = regionHeight*((gc+1)*width/gridCols-gc*width/gridCols);
+				//rounded average color of the region
+				int r = (int) ((sums[3*e]+count/2)/count);
+				int g = (int) ((sums[3*e+1]+count/2)/count);
+				int b = (int) ((sums[3*e+2]+count/2)/count);
+
+				if (colorSpace == ColorSpace.HSV) {
+					ColorUtil.rgb2hsv(r, g, b, sp.getChannel0(), sp.getChannel1(), sp.getChannel2(), e);
+				}else {
+					ColorUtil.rgb2lab(r, g, b, lab, 0);
+					sp.getChannel0()[e] = lab[0];
+					sp.getChannel1()[e] = lab[1];
+					sp.getChannel2()[e] = lab[2];
+				}
+			}
+		}
+		return sp;
+	}
+
+	/**
+	 * Makes sure the bands of the raster are 8-bit red, green and blue components (plus an optional alpha),
+	 * converting the image when its layout is different (indexed colors, gray levels, premultiplied alpha...).
+	 * @param image the original image
+	 * @return an image whose raster can be read directly
+	 */
+	private static BufferedImage toRgbImage(BufferedImage image) {
+		switch (image.getType()) {
+		case BufferedImage.TYPE_INT_RGB:
+		case BufferedImage.TYPE_INT_ARGB:
+		case BufferedImage.TYPE_INT_BGR:
+		case BufferedImage.TYPE_3BYTE_BGR:
+		case BufferedImage.TYPE_4BYTE_ABGR:
+			return image;
+		default:
+			BufferedImage rgbImage = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+			Graphics2D g = rgbImage.createGraphics();
+			try {
+				g.drawImage(image, 0, 0, null);
+			} finally {
+				g.dispose();
+			}
+			return rgbImage;
+		}
+	}
+
+	public int getGridRows() {
+		return gridRows;
+	}
+
+	public int getGridCols() {
+		return gridCols;
+	}
+
+	public ColorSpace getColorSpace() {
+		return colorSpace;
+	}
+}
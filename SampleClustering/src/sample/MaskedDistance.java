@@ -0,0 +1,61 @@
+package sample;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The weighted distance between masked samples. The weights and the validity of the elements of a sample are given
+ * as a MaskedSample of the same label, held by this distance: they are data of the dataset, kept as they are whatever
+ * happens to the samples afterwards, and serialized along with the distance. A sample given this way is compared
+ * through the colors of its MaskedSample. The other samples are compared through a default masked copy kept with them,
+ * where the missing elements (null) are masked and the others have a weight of 1.
+ * Two samples without any valid element in common cannot be compared.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ * @see MaskedSample
+ */
+@SuppressWarnings("serial")
+public class MaskedDistance implements SampleDistance {
+
+	//the masked samples given for the dataset, indexed by their label
+	private Map<String, MaskedSample> masks;
+
+	/**
+	 * Constructor. All the samples are compared through their default masked copy.
+	 */
+	public MaskedDistance() {
+		this.masks = new ConcurrentHashMap<String, MaskedSample>();
+	}
+
+	/**
+	 * Constructor.
+	 * @param masks the weights and the validity of the elements of some samples, identified by their label
+	 */
+	public MaskedDistance(Collection<MaskedSample> masks) {
+		this();
+		for (MaskedSample mask:masks) {
+			this.put(mask);
+		}
+	}
+
+	/**
+	 * Defines the weights and the validity of the elements of a sample, replacing the previous ones.
+	 * @param mask the masked sample, with the label of the sample
+	 */
+	public void put(MaskedSample mask) {
+		masks.put(mask.getLabel(), mask);
+	}
+
+	@Override
+	public double calcDistance(Sample sp1, Sample sp2) throws SampleException {
+		return this.masked(sp1).calcDistance(this.masked(sp2));
+	}
+
+	private MaskedSample masked(Sample sp) {
+		MaskedSample mask = masks.get(sp.getLabel());
+		return mask != null ? mask : sp.getMasked();
+	}
+
+}
@@ -0,0 +1,175 @@
+package sample;
+
+import java.io.Serializable;
+
+/**
+ * A primitive sample whose elements carry a weight and a validity flag, for samples where some regions are missing
+ * or unreliable. The flags are stored in a bitmask, 64 elements per word, so that two samples are compared by
+ * intersecting their masks word by word and only visiting the positions valid in both of them. The distance is the
+ * weighted average of the distances between the elements, the weight of a position being the product of the weights
+ * of both elements: masked positions neither contribute to the distance nor to the total weight.
+ * When all the elements are valid with a weight of 1, the distance is the one of PrimitiveSample.calcDistance.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see PrimitiveSample
+ */
+@SuppressWarnings("serial")
+public class MaskedSample implements Serializable {
+
+	//the colors of the elements
+	private PrimitiveSample data;
+
+	//the weight of each element
+	private float[] weights;
+
+	//the validity of each element, bit i%64 of the word i/64
+	private long[] valid;
+
+	/**
+	 * Constructor. All the elements are valid, with a weight of 1.
+	 * @param data the colors of the elements
+	 */
+	public MaskedSample(PrimitiveSample data) {
+		int length = data.length();
+		this.data = data;
+		this.weights = new float[length];
+		this.valid = new long[(length+63)/64];
+		for (int i=0;i<length;i++) {
+			weights[i] = 1;
+			valid[i >>> 6] |= 1L << i;
+		}
+	}
+
+	/**
+	 * Builds a masked copy of a regular sample, where the missing elements (null) are masked.
+	 * @param sp the sample to be copied
+	 * @return a sample in the HSV color model
+	 */
+	public static MaskedSample of(Sample sp) {
+		PrimitiveSample data = new PrimitiveSample(sp.getLabel(), ColorSpace.HSV, sp.size());
+		MaskedSample masked = new MaskedSample(data);
+		int i = 0;
+		for (SampleElementColor se:sp) {
+			if (se == null) {
+				masked.setValid(i, false);
+			}else {
+				data.getChannel0()[i] = se.getH();
+				data.getChannel1()[i] = se.getS();
+				data.getChannel2()[i] = se.getV();
+			}
+			i++;
+		}
+		return masked;
+	}
+
+	/**
+	 * Calculates the weighted average distance between the elements valid in both samples.
+	 * @param sp2 the other sample
+	 * @return the distance between the two samples
+	 * @throws SampleException if the samples have different lengths or color models, or no valid position in common
+	 */
+	public double calcDistance(MaskedSample sp2) throws SampleException {
+
+		if (this.length() != sp2.length()) {
+			throw new SampleException("Error: The two samples should be of identical length.");
+		}
+		if (data.getColorSpace() != sp2.data.getColorSpace()) {
+			throw new SampleException("Error: The two samples should be encoded in the same color model.");
+		}
+
+		float[] a0 = data.getChannel0(), a1 = data.getChannel1(), a2 = data.getChannel2();
+		float[] b0 = sp2.data.getChannel0(), b1 = sp2.data.getChannel1(), b2 = sp2.data.getChannel2();
+		boolean hsv = data.getColorSpace() == ColorSpace.HSV;
+
+		double distance = 0.0, totalWeight = 0.0;
+
+		for (int w=0;w<valid.length;w++) {
+			//the positions of the word valid in both samples
+			long bits = valid[w] & sp2.valid[w];
+			while (bits != 0) {
+				int i = (w << 6)+Long.numberOfTrailingZeros(bits);
+				bits &= bits-1;
+
+				double d;
+				if (hsv) {
+					//as in Sample.calcDistance, the element of the other sample is compared to the element of this one
+					d = ColorDistanceKernels.fused(b0[i], b1[i], b2[i], a0[i], a1[i], a2[i]);
+				}else {
+					double d0 = b0[i]-a0[i], d1 = b1[i]-a1[i], d2 = b2[i]-a2[i];
+					d = Math.sqrt(d0*d0+d1*d1+d2*d2);
+				}
+				double weight = (double) weights[i]*sp2.weights[i];
+				distance += weight*d;
+				totalWeight += weight;
+			}
+		}
+
+		if (totalWeight == 0) {
+			throw new SampleException("Error: The two samples have no valid element in common.");
+		}
+		return distance/totalWeight;
+	}
+
+	/**
+	 * Defines the weight of an element.
+	 * @param i the position of the element
+	 * @param weight a positive or zero weight
+	 */
+	public void setWeight(int i, float weight) {
+		if (!(weight >= 0) || Float.isInfinite(weight)) {
+			throw new IllegalArgumentException("The weight of an element should be positive or zero.");
+		}
+		weights[i] = weight;
+	}
+
+	public float getWeight(int i) {
+		return weights[i];
+	}
+
+	/**
+	 * Marks an element as valid or masked.
+	 * @param i the position of the element
+	 * @param isValid false if the element is missing or unreliable
+	 */
+	public void setValid(int i, boolean isValid) {
+		if (i < 0 || i >= this.length()) {
+			throw new IndexOutOfBoundsException("Position "+i+" out of a sample of length "+this.length());
+		}
+		if (isValid) {
+			valid[i >>> 6] |= 1L << i;
+		}else {
+			valid[i >>> 6] &= ~(1L << i);
+		}
+	}
+
+	public boolean isValid(int i) {
+		return (valid[i >>> 6] & (1L << i)) != 0;
+	}
+
+	/**
+	 * @return the number of valid elements
+	 */
+	public int getValidCount() {
+		int count = 0;
+		for (long word:valid) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+
+	public int length() {
+		return data.length();
+	}
+
+	/**
+	 * @return the colors of the elements, including the masked ones whose values are meaningless
+	 */
+	public PrimitiveSample getData() {
+		return data;
+	}
+
+	public String getLabel() {
+		return data.getLabel();
+	}
+}
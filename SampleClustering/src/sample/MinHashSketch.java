@@ -0,0 +1,150 @@
+package sample;
+
+import java.util.Random;
+
+/**
+ * A fixed-size locality-sensitive sketch of a sample. The elements are quantized into a small palette of HSV colors,
+ * and each element becomes a token made of its position and its palette color. The sketch keeps, for each of its
+ * hash functions, the minimal hash value over the tokens of the sample (MinHash), so that the proportion of equal
+ * values between two sketches estimates the Jaccard similarity of their token sets.
+ * Two sketches can only be compared if they come from the same MinHashSketch.Factory.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see SketchIndex
+ */
+public class MinHashSketch {
+
+	//the minimal hash value for each hash function
+	private long[] minHashes;
+
+	private MinHashSketch(long[] minHashes) {
+		this.minHashes = minHashes;
+	}
+
+	/**
+	 * Estimates the Jaccard similarity between the token sets of two samples.
+	 * @param other the other sketch
+	 * @return the proportion of equal minimal hash values
+	 */
+	public double estimateJaccard(MinHashSketch other) {
+		int equal = 0;
+		for (int k=0;k<minHashes.length;k++) {
+			if (minHashes[k] == other.minHashes[k]) {
+				equal++;
+			}
+		}
+		return (double) equal/minHashes.length;
+	}
+
+	/**
+	 * Estimates the proportion of positions where two samples of the same length have different palette colors.
+	 * With m matching positions out of L, the token sets share m tokens out of 2L-m, hence J = m/(2L-m).
+	 * @param other the other sketch
+	 * @return the estimated proportion of mismatching positions
+	 */
+	public double estimateMismatch(MinHashSketch other) {
+		double jaccard = this.estimateJaccard(other);
+		return 1-2*jaccard/(1+jaccard);
+	}
+
+	/**
+	 * @return the minimal hash values, one per hash function
+	 */
+	public long[] getMinHashes() {
+		return minHashes;
+	}
+
+	public int size() {
+		return minHashes.length;
+	}
+
+	/**
+	 * The finalizer of the SplitMix64 generator, used as a hash function on 64-bit values.
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Builds comparable sketches, sharing the same palette and hash functions.
+	 */
+	public static class Factory {
+
+		//the number of bins of the palette for the Hue, the Saturation and the Value
+		private int hBins;
+		private int sBins;
+		private int vBins;
+
+		//the seed of each hash function
+		private long[] seeds;
+
+		/**
+		 * Constructor.
+		 * @param size the number of hash functions, i.e. the size of the sketches
+		 * @param hBins the number of bins of the palette for the Hue
+		 * @param sBins the number of bins of the palette for the Saturation
+		 * @param vBins the number of bins of the palette for the Value
+		 * @param seed the seed used to draw the hash functions
+		 */
+		public Factory(int size, int hBins, int sBins, int vBins, long seed) {
+			if (size < 1 || hBins < 1 || sBins < 1 || vBins < 1) {
+				throw new IllegalArgumentException("The size of the sketches and the number of bins should be positive.");
+			}
+			this.hBins = hBins;
+			this.sBins = sBins;
+			this.vBins = vBins;
+			this.seeds = new long[size];
+			Random random = new Random(seed);
+			for (int k=0;k<size;k++) {
+				seeds[k] = random.nextLong();
+			}
+		}
+
+		/**
+		 * Computes the sketch of a sample.
+		 * @param sp the sample
+		 * @return its sketch
+		 */
+		public MinHashSketch sketch(Sample sp) {
+
+			long[] minHashes = new long[seeds.length];
+			for (int k=0;k<minHashes.length;k++) {
+				minHashes[k] = Long.MAX_VALUE;
+			}
+
+			int colors = (hBins+1)*sBins*vBins;
+			long position = 0;
+			for (SampleElementColor se:sp) {
+				long token = mix(position*colors+this.paletteColor(se));
+				for (int k=0;k<minHashes.length;k++) {
+					long hash = mix(token ^ seeds[k]);
+					if (hash < minHashes[k]) {
+						minHashes[k] = hash;
+					}
+				}
+				position++;
+			}
+			return new MinHashSketch(minHashes);
+		}
+
+		/**
+		 * @return the index of the palette color of an element, the unsaturated colors having their own hue
+		 */
+		private int paletteColor(SampleElementColor se) {
+			int h = se.getS() == 0 ? hBins : bin(se.getH(), hBins);
+			return (h*sBins+bin(se.getS(), sBins))*vBins+bin(se.getV(), vBins);
+		}
+
+		private static int bin(float value, int bins) {
+			int b = (int) (value*bins);
+			return b < 0 ? 0 : (b >= bins ? bins-1 : b);
+		}
+
+		public int getSize() {
+			return seeds.length;
+		}
+	}
+}
@@ -0,0 +1,18 @@
+package sample;
+
+/**
+ * The default distance measure, comparing the elements of two samples position by position.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ * @see Sample#calcDistance(Sample)
+ */
+@SuppressWarnings("serial")
+public class PositionalDistance implements SampleDistance {
+
+	@Override
+	public double calcDistance(Sample sp1, Sample sp2) throws SampleException {
+		return sp1.calcDistance(sp2);
+	}
+
+}
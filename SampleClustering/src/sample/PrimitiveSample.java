@@ -0,0 +1,159 @@
+package sample;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A compact representation of a Sample where the color components of the elements are stored in primitive arrays,
+ * one per channel, instead of a list of SampleElementColor objects. Such samples are typically produced in bulk by the
+ * ImageSampleReader and are clustered directly by SampleClustering.clusterEncoded, in either color model, without
+ * being converted into regular samples.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ * @see ImageSampleReader
+ * @see main.SampleClustering#clusterEncoded(java.util.List)
+ */
+@SuppressWarnings("serial")
+public class PrimitiveSample implements EncodedSample<PrimitiveSample>, Serializable {
+
+	private String label;
+	
+	//the color model of the channels
+	private ColorSpace colorSpace;
+	
+	//the three channels of the elements (H,S,V or L,a,b)
+	private float[] c0;
+	private float[] c1;
+	private float[] c2;
+	
+	/**
+	 * Constructor. Allocates the channels of a sample of a given length.
+	 * @param label the name of the sample
+	 * @param colorSpace the color model of the channels
+	 * @param length the number of elements
+	 */
+	public PrimitiveSample(String label, ColorSpace colorSpace, int length) {
+		this.label = label;
+		this.colorSpace = colorSpace;
+		this.c0 = new float[length];
+		this.c1 = new float[length];
+		this.c2 = new float[length];
+	}
+	
+	/**
+	 * Builds a compact copy of a regular sample.
+	 * @param sp the sample to be copied
+	 * @return a sample in the HSV color model
+	 */
+	public static PrimitiveSample of(Sample sp) {
+		PrimitiveSample copy = new PrimitiveSample(sp.getLabel(), ColorSpace.HSV, sp.size());
+		int i = 0;
+		for (SampleElementColor se:sp) {
+			copy.c0[i] = se.getH();
+			copy.c1[i] = se.getS();
+			copy.c2[i] = se.getV();
+			i++;
+		}
+		return copy;
+	}
+	
+	/**
+	 * Converts this sample into a regular sample, made of SampleElementColor objects.
+	 * @return the equivalent sample
+	 * @throws SampleException if the sample is not encoded in the HSV color model
+	 */
+	public Sample toSample() throws SampleException {
+		if (colorSpace != ColorSpace.HSV) {
+			throw new SampleException("Error: only HSV samples can be converted to SampleElementColor objects.");
+		}
+		Sample sp = new Sample();
+		sp.setLabel(label);
+		for (int i=0;i<c0.length;i++) {
+			SampleElementColor se = new SampleElementColor();
+			se.setH(c0[i]);
+			se.setS(c1[i]);
+			se.setV(c2[i]);
+			sp.add(se);
+		}
+		return sp;
+	}
+	
+	/**
+	 * Calculates the distance between the current sample and another one, i.e. the average distance between
+	 * their respective elements. HSV samples give the same distance as Sample.calcDistance, while L*a*b samples
+	 * rely on the CIE76 color difference.
+	 * @param sp2 the other sample
+	 * @return the distance between the two samples
+	 * @throws SampleException if the samples have different lengths or color models
+	 */
+	@Override
+	public double calcDistance(PrimitiveSample sp2) throws SampleException {
+		
+		if (this.length() != sp2.length()) {
+			throw new SampleException("Error: The two samples should be of identical length.");
+		}
+		if (this.colorSpace != sp2.colorSpace) {
+			throw new SampleException("Error: The two samples should be encoded in the same color model.");
+		}
+		
+		double distance = 0.0;
+		int sampleLength = this.length();
+		
+		if (colorSpace == ColorSpace.HSV) {
+			for (int i=0;i<sampleLength;i++) {
+				//as in Sample.calcDistance, the element of the other sample is compared to the element of this one
+				distance += ColorDistanceKernels.fused(sp2.c0[i], sp2.c1[i], sp2.c2[i], c0[i], c1[i], c2[i]);
+			}
+		}else {
+			for (int i=0;i<sampleLength;i++) {
+				double d0 = sp2.c0[i]-c0[i], d1 = sp2.c1[i]-c1[i], d2 = sp2.c2[i]-c2[i];
+				distance += Math.sqrt(d0*d0+d1*d1+d2*d2);
+			}
+		}
+		return distance/(double)sampleLength;
+	}
+	
+	public int length() {
+		return c0.length;
+	}
+
+	@Override
+	public String getLabel() {
+		return label;
+	}
+
+	public void setLabel(String label) {
+		this.label = label;
+	}
+
+	public ColorSpace getColorSpace() {
+		return colorSpace;
+	}
+
+	/**
+	 * @return the first channel (Hue or L)
+	 */
+	public float[] getChannel0() {
+		return c0;
+	}
+
+	/**
+	 * @return the second channel (Saturation or a)
+	 */
+	public float[] getChannel1() {
+		return c1;
+	}
+
+	/**
+	 * @return the third channel (Value or b)
+	 */
+	public float[] getChannel2() {
+		return c2;
+	}
+	
+	@Override
+	public String toString() {
+		return this.label+" ("+colorSpace+")\n"+Arrays.toString(c0)+"\n"+Arrays.toString(c1)+"\n"+Arrays.toString(c2);
+	}
+}
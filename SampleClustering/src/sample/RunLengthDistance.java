@@ -0,0 +1,22 @@
+package sample;
+
+/**
+ * The positional distance computed on the run-length encodings of the samples, which are kept alongside the samples.
+ * The number of element distances computed depends on the number of runs rather than on the length of the samples,
+ * which pays off when the samples are made of long stretches of identical elements, and the result is exactly the
+ * one of Sample.calcDistance. The encodings take memory on top of the samples: when memory matters, the encoded samples
+ * are clustered without the samples by SampleClustering.clusterEncoded.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ * @see RunLengthSample
+ */
+@SuppressWarnings("serial")
+public class RunLengthDistance implements SampleDistance {
+
+	@Override
+	public double calcDistance(Sample sp1, Sample sp2) throws SampleException {
+		return sp1.getRunLengths().calcDistance(sp2.getRunLengths());
+	}
+
+}
@@ -0,0 +1,174 @@
+package sample;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A run-length encoded representation of a Sample, where each stretch of identical consecutive elements is stored
+ * once along with the position where it ends. The colors of the runs are kept in primitive arrays, so that samples
+ * made of large uniform regions take much less memory than the list of their elements, which does not need to be kept:
+ * the encoded samples are clustered directly by SampleClustering.clusterEncoded.
+ * Two samples are compared by merging their runs: the distance between two elements is computed once for each segment
+ * where both runs overlap, then added once per position of the segment, so that the result is exactly the one of
+ * Sample.calcDistance.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see Sample#calcDistance(Sample)
+ */
+@SuppressWarnings("serial")
+public class RunLengthSample implements EncodedSample<RunLengthSample>, Serializable {
+
+	private String label;
+
+	//the HSV color of each run
+	private float[] h;
+	private float[] s;
+	private float[] v;
+
+	//the position following the last element of each run
+	private int[] ends;
+
+	/**
+	 * Encodes a sequence of colors, consecutive elements being gathered into a run when they have the same HSV values.
+	 * The colors of the runs are gathered at the beginning of the arrays, which are then trimmed.
+	 */
+	private RunLengthSample(String label, float[] h, float[] s, float[] v, int length) {
+		this.label = label;
+
+		int[] runEnds = new int[length];
+		int runs = 0;
+		for (int i=0;i<length;i++) {
+			if (runs == 0 || !sameColor(h, s, v, runs-1, i)) {
+				h[runs] = h[i];
+				s[runs] = s[i];
+				v[runs] = v[i];
+				runs++;
+			}
+			runEnds[runs-1] = i+1;
+		}
+
+		this.h = Arrays.copyOf(h, runs);
+		this.s = Arrays.copyOf(s, runs);
+		this.v = Arrays.copyOf(v, runs);
+		this.ends = Arrays.copyOf(runEnds, runs);
+	}
+
+	/**
+	 * Encodes a regular sample, consecutive elements being gathered into a run when they have the same HSV values.
+	 * @param sp the sample to be encoded
+	 * @return the encoded sample
+	 */
+	public static RunLengthSample of(Sample sp) {
+		int length = sp.size();
+		float[] h = new float[length], s = new float[length], v = new float[length];
+		int i = 0;
+		for (SampleElementColor se:sp) {
+			h[i] = se.getH();
+			s[i] = se.getS();
+			v[i] = se.getV();
+			i++;
+		}
+		return new RunLengthSample(sp.getLabel(), h, s, v, length);
+	}
+
+	/**
+	 * Encodes a primitive sample, without going through SampleElementColor objects.
+	 * @param sp the sample to be encoded
+	 * @return the encoded sample
+	 * @throws SampleException if the sample is not encoded in the HSV color model
+	 */
+	public static RunLengthSample of(PrimitiveSample sp) throws SampleException {
+		if (sp.getColorSpace() != ColorSpace.HSV) {
+			throw new SampleException("Error: only HSV samples can be run-length encoded.");
+		}
+		return new RunLengthSample(sp.getLabel(), sp.getChannel0().clone(), sp.getChannel1().clone(), sp.getChannel2().clone(), sp.length());
+	}
+
+	/**
+	 * @return true if the colors at the positions run and i have exactly the same HSV values
+	 */
+	private static boolean sameColor(float[] h, float[] s, float[] v, int run, int i) {
+		return Float.floatToIntBits(h[run]) == Float.floatToIntBits(h[i])
+				&& Float.floatToIntBits(s[run]) == Float.floatToIntBits(s[i])
+				&& Float.floatToIntBits(v[run]) == Float.floatToIntBits(v[i]);
+	}
+
+	/**
+	 * Decodes this sample into a regular sample.
+	 * @return the equivalent sample
+	 */
+	public Sample toSample() {
+		Sample sp = new Sample();
+		sp.setLabel(label);
+		for (int r=0, position=0;r<ends.length;r++) {
+			for (;position<ends[r];position++) {
+				SampleElementColor se = new SampleElementColor();
+				se.setH(h[r]);
+				se.setS(s[r]);
+				se.setV(v[r]);
+				sp.add(se);
+			}
+		}
+		return sp;
+	}
+
+	/**
+	 * Calculates the distance between the current sample and another one, with one element distance per segment where
+	 * two runs overlap. The sum is accumulated position by position, in the same order as Sample.calcDistance, so the
+	 * result is identical to the one of the decoded samples.
+	 * @param sp2 the other sample
+	 * @return the average distance between the elements at the same positions
+	 * @throws SampleException if the two samples do not have the same length
+	 */
+	@Override
+	public double calcDistance(RunLengthSample sp2) throws SampleException {
+
+		int length = this.length();
+		if (length != sp2.length()) {
+			throw new SampleException("Error: The two samples should be of identical length.");
+		}
+
+		double distance = 0.0;
+		int r1 = 0, r2 = 0, position = 0;
+		while (position < length) {
+			//the segment where both runs overlap
+			int end = Math.min(ends[r1], sp2.ends[r2]);
+			//as in Sample.calcDistance, the element of the other sample is compared to the element of this one
+			double d = ColorDistanceKernels.fused(sp2.h[r2], sp2.s[r2], sp2.v[r2], h[r1], s[r1], v[r1]);
+			for (;position<end;position++) {
+				distance += d;
+			}
+			if (ends[r1] == end) {
+				r1++;
+			}
+			if (sp2.ends[r2] == end) {
+				r2++;
+			}
+		}
+		return distance/(double)length;
+	}
+
+	/**
+	 * @return the number of elements of the sample
+	 */
+	public int length() {
+		return ends.length > 0 ? ends[ends.length-1] : 0;
+	}
+
+	/**
+	 * @return the number of runs of identical elements
+	 */
+	public int getRunCount() {
+		return ends.length;
+	}
+
+	@Override
+	public String getLabel() {
+		return label;
+	}
+
+	public void setLabel(String label) {
+		this.label = label;
+	}
+}
@@ -1,6 +1,7 @@
 package sample;
 
 import java.util.LinkedList;
+import java.util.ListIterator;
 
 /**
  * This class represents a Sample, it is made of sequential colored elements
@@ -18,6 +19,18 @@ public class Sample extends LinkedList<SampleElementColor> {
 	
 	private String label;
 	
+	//the last color signature computed for this sample, and the modification count of the list at that time
+	private transient ColorSignature signature;
+	private transient int signatureModCount;
+	
+	//the last run-length encoding of this sample, and the modification count of the list at that time
+	private transient RunLengthSample runLengths;
+	private transient int runLengthsModCount;
+
+	//the last masked copy of this sample, and the modification count of the list at that time
+	private transient MaskedSample masked;
+	private transient int maskedModCount;
+	
 	/**
 	 * Constructor.
 	 */
@@ -51,6 +64,125 @@ public class Sample extends LinkedList<SampleElementColor> {
 		return distance;
 	}
 
+	/**
+	 * Returns the color signature of the sample. The signature is computed once and kept with the sample
+	 * until elements are added, removed or replaced, or another binning is requested. Changing the values of an element
+	 * already in the sample is not detected.
+	 * @param hBins the number of bins for the Hue
+	 * @param sBins the number of bins for the Saturation
+	 * @param vBins the number of bins for the Value
+	 * @return the HSV signature of the sample
+	 * @see ColorSignature
+	 */
+	public synchronized ColorSignature getSignature(int hBins, int sBins, int vBins) {
+		if (signature == null || signatureModCount != modCount || !signature.hasBinning(ColorSpace.HSV, hBins, sBins, vBins)) {
+			signature = ColorSignature.of(this, hBins, sBins, vBins);
+			signatureModCount = modCount;
+		}
+		return signature;
+	}
+
+	/**
+	 * Returns the run-length encoding of the sample. The encoding is computed once and kept with the sample
+	 * until elements are added, removed or replaced. Changing the values of an element already in the sample
+	 * is not detected. The encoding is kept on top of the elements, so it speeds up the comparisons at the cost of
+	 * some memory; to save memory as well, the encoded samples are clustered on their own.
+	 * @return the encoded sample
+	 * @see RunLengthSample
+	 * @see main.SampleClustering#clusterEncoded(java.util.List)
+	 */
+	public synchronized RunLengthSample getRunLengths() {
+		if (runLengths == null || runLengthsModCount != modCount) {
+			runLengths = RunLengthSample.of(this);
+			runLengthsModCount = modCount;
+		}
+		return runLengths;
+	}
+
+	/**
+	 * Returns the default masked copy of the sample, where the missing elements (null) are masked and all the other
+	 * ones have a weight of 1. The copy is derived from the elements only: it is computed once and kept with the sample
+	 * until elements are added, removed or replaced, and must not be modified. Custom weights and masks are given to the
+	 * MaskedDistance instead.
+	 * @return the masked copy of the sample
+	 * @see MaskedDistance
+	 */
+	synchronized MaskedSample getMasked() {
+		if (masked == null || maskedModCount != modCount) {
+			masked = MaskedSample.of(this);
+			maskedModCount = modCount;
+		}
+		return masked;
+	}
+
+	/**
+	 * Replaces an element. Unlike additions and removals, a replacement does not change the modification count
+	 * of the list, so the summaries kept with the sample are cleared.
+	 */
+	@Override
+	public SampleElementColor set(int index, SampleElementColor element) {
+		SampleElementColor previous = super.set(index, element);
+		this.clearCaches();
+		return previous;
+	}
+
+	/**
+	 * All the iterators of the list come from this method: the replacements made through them (including by
+	 * replaceAll and sort) clear the summaries kept with the sample as well.
+	 */
+	@Override
+	public ListIterator<SampleElementColor> listIterator(int index) {
+		final ListIterator<SampleElementColor> it = super.listIterator(index);
+		return new ListIterator<SampleElementColor>() {
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+			@Override
+			public SampleElementColor next() {
+				return it.next();
+			}
+			@Override
+			public boolean hasPrevious() {
+				return it.hasPrevious();
+			}
+			@Override
+			public SampleElementColor previous() {
+				return it.previous();
+			}
+			@Override
+			public int nextIndex() {
+				return it.nextIndex();
+			}
+			@Override
+			public int previousIndex() {
+				return it.previousIndex();
+			}
+			@Override
+			public void remove() {
+				it.remove();
+			}
+			@Override
+			public void set(SampleElementColor e) {
+				it.set(e);
+				clearCaches();
+			}
+			@Override
+			public void add(SampleElementColor e) {
+				it.add(e);
+			}
+		};
+	}
+
+	/**
+	 * Forgets the summaries computed from the elements.
+	 */
+	private synchronized void clearCaches() {
+		signature = null;
+		runLengths = null;
+		masked = null;
+	}
+
 	public String getLabel() {
 		return label;
 	}
@@ -0,0 +1,24 @@
+package sample;
+
+import java.io.Serializable;
+
+/**
+ * A distance measure between two samples, used to build the pairwise distance matrix of a dataset.
+ * Distances are serializable so that they can be handed to the worker processes computing the shards of a matrix.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ *
+ */
+public interface SampleDistance extends Serializable {
+	
+	/**
+	 * Calculates the distance between two samples.
+	 * @param sp1 the first sample
+	 * @param sp2 the second sample
+	 * @return the distance between the two samples
+	 * @throws SampleException if the samples cannot be compared with this measure
+	 */
+	public double calcDistance(Sample sp1, Sample sp2) throws SampleException;
+
+}
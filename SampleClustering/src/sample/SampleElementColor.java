@@ -1,6 +1,7 @@
 package sample;
 
 import java.awt.Color;
+import java.io.Serializable;
 
 /**
  * A class defining the elementary blocks of a sample. Each element presents a color information
@@ -15,7 +16,8 @@ import java.awt.Color;
  * @version 0.1
  *
  */
-public class SampleElementColor extends SampleElement<SampleElementColor> {
+@SuppressWarnings("serial")
+public class SampleElementColor extends SampleElement<SampleElementColor> implements Serializable {
 	private float h;
 	private float s;
 	private float v;
@@ -102,31 +104,37 @@ public class SampleElementColor extends SampleElement<SampleElementColor> {
 	 * A method calculating the color "distance" between the current element and another one, typically from another 
 	 * sample.
 	 *  For the sake of simplicity, the hue differences between two colors are considered as binary (0 when identical,
-	 * 1 when different).
+	 * 1 when different). The hue is not considered when one of the saturations is zero.
+	 * @see ColorDistanceKernels
 	 */
 	public double calcDistance (SampleElementColor otherElement) {
-		double distance = 0.0, hDistance = 0.0, sDistance =0.0, vDistance = 0.0;
-		
-		//when hues are different, consider the hDistance as 1 
-		if (otherElement.getH()-this.h != 0.0) { 
-			hDistance = 1;
-		}
-		
-		sDistance = otherElement.getS()-this.s;
-		vDistance = otherElement.getV()-this.v;
-		
 		//Calculate the euclidean distance between the two elements in the HSV space
-		if (this.s == 0 || otherElement.getS() == 0 ) { //do  not consider the hue when the saturation is zero
-			distance = Math.sqrt(power2(sDistance)+power2(vDistance));
-		}else {
-			distance = Math.sqrt(power2(hDistance)+power2(sDistance)+power2(vDistance));
+		return ColorDistanceKernels.fused(this.h, this.s, this.v, otherElement.h, otherElement.s, otherElement.v);
+	}
+
+	/**
+	 * Two elements are equal when they have exactly the same HSV values.
+	 */
+	@Override
+	public boolean equals (Object obj) {
+		if (this == obj) {
+			return true;
 		}
-		return distance;
+		if (!(obj instanceof SampleElementColor)) {
+			return false;
+		}
+		SampleElementColor other = (SampleElementColor) obj;
+		return Float.floatToIntBits(h) == Float.floatToIntBits(other.h)
+				&& Float.floatToIntBits(s) == Float.floatToIntBits(other.s)
+				&& Float.floatToIntBits(v) == Float.floatToIntBits(other.v);
 	}
-	
-	
-	private double power2 (double value) {
-		return Math.pow(value,2);
+
+	@Override
+	public int hashCode () {
+		int hash = Float.floatToIntBits(h);
+		hash = 31*hash+Float.floatToIntBits(s);
+		hash = 31*hash+Float.floatToIntBits(v);
+		return hash;
 	}
 
 	@Override
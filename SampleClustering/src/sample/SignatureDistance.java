@@ -0,0 +1,61 @@
+package sample;
+
+/**
+ * A distance measure comparing the color composition of two samples rather than their elements position by position.
+ * Each sample is summarized once into a ColorSignature, kept alongside the sample, so that the cost of a comparison
+ * does not depend on the length of the samples. Samples of different lengths can also be compared.
+ * 
+ * @author Julien Jorda
+ * @version 0.1
+ * @see ColorSignature
+ */
+@SuppressWarnings("serial")
+public class SignatureDistance implements SampleDistance {
+	
+	/**
+	 * The ways of comparing two signatures.
+	 */
+	public enum Mode {
+		INTERSECTION, CHI_SQUARE, EMD
+	}
+	
+	private Mode mode;
+	
+	//the number of bins for the Hue, the Saturation and the Value
+	private int hBins;
+	private int sBins;
+	private int vBins;
+	
+	/**
+	 * Constructor.
+	 * @param mode the way of comparing two signatures
+	 * @param hBins the number of bins for the Hue
+	 * @param sBins the number of bins for the Saturation
+	 * @param vBins the number of bins for the Value
+	 */
+	public SignatureDistance(Mode mode, int hBins, int sBins, int vBins) {
+		this.mode = mode;
+		this.hBins = hBins;
+		this.sBins = sBins;
+		this.vBins = vBins;
+	}
+
+	@Override
+	public double calcDistance(Sample sp1, Sample sp2) throws SampleException {
+		ColorSignature sig1 = sp1.getSignature(hBins, sBins, vBins);
+		ColorSignature sig2 = sp2.getSignature(hBins, sBins, vBins);
+		
+		switch (mode) {
+		case INTERSECTION:
+			return sig1.intersectionDistance(sig2);
+		case CHI_SQUARE:
+			return sig1.chiSquareDistance(sig2);
+		default:
+			return sig1.emdDistance(sig2);
+		}
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+}
@@ -0,0 +1,106 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A locality-sensitive hashing index over MinHash sketches. The sketches are cut into bands of consecutive hash values,
+ * and two samples become a candidate pair as soon as one of their bands is identical. With b bands of r values,
+ * a pair with a Jaccard similarity J is found with a probability of 1-(1-J^r)^b, so that close pairs are found
+ * without comparing all the pairs.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see MinHashSketch
+ */
+public class SketchIndex {
+
+	//the number of bands and the number of hash values per band
+	private int bands;
+	private int rows;
+
+	//the indexed sketches, in the order of their insertion
+	private List<MinHashSketch> sketches;
+
+	//for each band, the samples sharing the same band values
+	private List<Map<Long, List<Integer>>> buckets;
+
+	/**
+	 * Constructor.
+	 * @param bands the number of bands
+	 * @param rows the number of hash values per band; bands*rows should not exceed the size of the sketches
+	 */
+	public SketchIndex(int bands, int rows) {
+		if (bands < 1 || rows < 1) {
+			throw new IllegalArgumentException("The number of bands and rows should be positive.");
+		}
+		this.bands = bands;
+		this.rows = rows;
+		this.sketches = new ArrayList<MinHashSketch>();
+		this.buckets = new ArrayList<Map<Long, List<Integer>>>();
+		for (int b=0;b<bands;b++) {
+			buckets.add(new HashMap<Long, List<Integer>>());
+		}
+	}
+
+	/**
+	 * Adds a sketch to the index.
+	 * @param sketch the sketch of the next sample
+	 * @return the index of the sample
+	 */
+	public int add(MinHashSketch sketch) {
+		if (sketch.size() < bands*rows) {
+			throw new IllegalArgumentException("The sketch is smaller than bands*rows.");
+		}
+		int index = sketches.size();
+		sketches.add(sketch);
+
+		long[] minHashes = sketch.getMinHashes();
+		for (int b=0;b<bands;b++) {
+			long key = b;
+			for (int r=b*rows;r<(b+1)*rows;r++) {
+				key = MinHashSketch.mix(key ^ minHashes[r]);
+			}
+			List<Integer> bucket = buckets.get(b).get(key);
+			if (bucket == null) {
+				bucket = new ArrayList<Integer>(2);
+				buckets.get(b).put(key, bucket);
+			}
+			bucket.add(index);
+		}
+		return index;
+	}
+
+	/**
+	 * Lists the candidate pairs, i.e. the pairs of samples sharing at least one band.
+	 * @return the candidate pairs, each one encoded as (i&lt;&lt;32)|j with i&lt;j
+	 */
+	public Set<Long> getCandidatePairs() {
+		Set<Long> pairs = new LinkedHashSet<Long>();
+		for (Map<Long, List<Integer>> band:buckets) {
+			for (List<Integer> bucket:band.values()) {
+				for (int a=0;a<bucket.size();a++) {
+					for (int b=a+1;b<bucket.size();b++) {
+						pairs.add(((long) bucket.get(a) << 32) | bucket.get(b));
+					}
+				}
+			}
+		}
+		return pairs;
+	}
+
+	/**
+	 * @return the sketch of a sample of the index
+	 */
+	public MinHashSketch getSketch(int index) {
+		return sketches.get(index);
+	}
+
+	public int size() {
+		return sketches.size();
+	}
+}
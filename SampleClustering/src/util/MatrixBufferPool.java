@@ -0,0 +1,69 @@
+package util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A pool of square arrays, so that the distance matrices of successive jobs of similar sizes reuse the same memory
+ * instead of allocating new arrays. The arrays are grouped by capacity: the capacities of a class differ by at most
+ * one eighth, so that an array is never much larger than the matrix it holds. Only a few arrays of each capacity
+ * are kept, the other ones being left to the garbage collector.
+ * The released arrays are not cleared.
+ *
+ * @author Julien Jorda
+ * @version 0.1
+ * @see SquareMatrix#SquareMatrix(double[][], int)
+ */
+public class MatrixBufferPool {
+
+	private static final int MIN_CAPACITY = 16;
+
+	//the number of arrays kept for each capacity
+	private int maxPerCapacity;
+
+	//the free arrays, by capacity
+	private ConcurrentHashMap<Integer, Queue<double[][]>> free = new ConcurrentHashMap<Integer, Queue<double[][]>>();
+
+	/**
+	 * Constructor.
+	 * @param maxPerCapacity the number of arrays kept for each capacity
+	 */
+	public MatrixBufferPool(int maxPerCapacity) {
+		this.maxPerCapacity = maxPerCapacity;
+	}
+
+	/**
+	 * Takes a free array, or allocates a new one.
+	 * @param size the size of the matrix to be held
+	 * @return a square array of at least size rows and columns, whose content is undefined
+	 */
+	public double[][] acquire(int size) {
+		int capacity = capacityOf(size);
+		Queue<double[][]> arrays = free.get(capacity);
+		double[][] buffer = arrays == null ? null : arrays.poll();
+		return buffer != null ? buffer : new double[capacity][capacity];
+	}
+
+	/**
+	 * Gives an array back to the pool once the matrix it holds is no longer used.
+	 * @param buffer an array obtained from acquire
+	 */
+	public void release(double[][] buffer) {
+		Queue<double[][]> arrays = free.computeIfAbsent(buffer.length, c -> new ConcurrentLinkedQueue<double[][]>());
+		if (arrays.size() < maxPerCapacity) {
+			arrays.offer(buffer);
+		}
+	}
+
+	/**
+	 * @return the size rounded up to the next capacity, capacities being spaced by an eighth of their highest bit
+	 */
+	private static int capacityOf(int size) {
+		if (size <= MIN_CAPACITY) {
+			return MIN_CAPACITY;
+		}
+		int step = Integer.highestOneBit(size)/8;
+		return (size+step-1)/step*step;
+	}
+}
@@ -23,6 +23,17 @@ public class SquareMatrix {
 		this.labels = new String[size];
 	}
 
+	/**
+	 * Wraps a buffer which may be larger than the matrix, only its first rows and columns being used.
+	 * @param buffer a square array of at least size rows and columns
+	 * @param size the size of the matrix
+	 */
+	public SquareMatrix(double[][] buffer, int size) {
+		this.matrix = buffer;
+		this.size = size;
+		this.labels = new String[size];
+	}
+
 	
 	public void set(int row, int col, double value) {
 		matrix[row][col] = value;
@@ -134,6 +145,17 @@ public class SquareMatrix {
 		}
 	}
 	
+	/**
+	 * Reduces the matrix to its first rows and columns, keeping the same array.
+	 * @param size the new size, not larger than the current one
+	 */
+	public void truncate(int size) {
+		if (size > this.size) {
+			throw new IllegalArgumentException("A matrix of size "+this.size+" cannot be truncated to "+size);
+		}
+		this.size = size;
+	}
+	
 	public int[] getMinRowCol() {
 		int[] minRowCol = {0,0};
 		double minValue = this.get(0,0);